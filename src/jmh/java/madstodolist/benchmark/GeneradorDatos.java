@@ -0,0 +1,136 @@
+package madstodolist.benchmark;
+
+import madstodolist.authentication.PasswordHasher;
+import madstodolist.model.Usuario;
+import madstodolist.service.EquipoService;
+import madstodolist.service.TareaService;
+import org.hibernate.Session;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Genera un conjunto de datos sintético: 'numUsuarios' usuarios (el último
+// es el administrador), 'tareasPorUsuario' tareas de cada usuario y
+// 'numEquipos' equipos vacíos. Todos los usuarios tienen la contraseña
+// PASSWORD y el email usuarioN@umh.es (N desde 0).
+//
+// Los usuarios se guardan con un único hash de la contraseña (en lugar
+// de calcular uno por usuario en 'registrar') en lotes JDBC de
+// TAM_LOTE, y las tareas con TareaService.nuevasTareasUsuario, que
+// también las inserta en lotes. Los miembros de los equipos se añaden
+// aparte (asignarMiembros).
+public class GeneradorDatos {
+
+    private final ApplicationContext contexto;
+
+    public static final String PASSWORD = "12345678";
+
+    // Igual que hibernate.jdbc.batch_size y el allocationSize de las
+    // secuencias
+    static final int TAM_LOTE = 50;
+
+    private final List<Long> idsUsuarios = new ArrayList<>();
+    private final List<Long> idsEquipos = new ArrayList<>();
+
+    public static String email(int usuario) {
+        return "usuario" + usuario + "@umh.es";
+    }
+
+    public GeneradorDatos(ApplicationContext contexto, int numUsuarios, int tareasPorUsuario, int numEquipos) {
+        this.contexto = contexto;
+        TareaService tareaService = contexto.getBean(TareaService.class);
+        EquipoService equipoService = contexto.getBean(EquipoService.class);
+        String hash = contexto.getBean(PasswordHasher.class).hash(PASSWORD);
+
+        // Una única transacción; el tamaño de lote se fija en la sesión para
+        // no depender de la configuración, y se vacía el contexto de
+        // persistencia después de cada lote para que no crezca con el
+        // número de usuarios
+        EntityManager entityManager = contexto.getBean(EntityManagerFactory.class).createEntityManager();
+        try {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(TAM_LOTE);
+            entityManager.getTransaction().begin();
+            for (int i = 0; i < numUsuarios; i++) {
+                Usuario usuario = new Usuario(email(i));
+                usuario.setNombre("Usuario " + i);
+                usuario.setPassword(hash);
+                usuario.setIsAdmin(i == numUsuarios - 1);
+                entityManager.persist(usuario);
+                idsUsuarios.add(usuario.getId());
+                if ((i + 1) % TAM_LOTE == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+
+        List<String> titulos = new ArrayList<>();
+        for (int i = 0; i < tareasPorUsuario; i++)
+            titulos.add("Tarea " + i);
+        if (!titulos.isEmpty()) {
+            for (Long idUsuario : idsUsuarios)
+                tareaService.nuevasTareasUsuario(idUsuario, titulos);
+        }
+
+        for (int i = 0; i < numEquipos; i++)
+            idsEquipos.add(equipoService.crearEquipo("Equipo " + i).getId());
+    }
+
+    // Cada usuario se une a entre 0 y 'maxEquiposPorUsuario' equipos
+    // distintos. Los equipos se eligen con una distribución de Zipf: el
+    // equipo i tiene una probabilidad proporcional a 1 / (i + 1), de forma
+    // que unos pocos equipos tienen muchos miembros y la mayoría pocos.
+    // Con la misma semilla se generan siempre los mismos miembros. Se
+    // insertan directamente en equipo_usuario, en lotes JDBC y en una
+    // única transacción. Devuelve el número de miembros añadidos.
+    public long asignarMiembros(int maxEquiposPorUsuario, long semilla) {
+        Random random = new Random(semilla);
+        double[] acumulada = new double[idsEquipos.size()];
+        double total = 0;
+        for (int i = 0; i < acumulada.length; i++) {
+            total += 1.0 / (i + 1);
+            acumulada[i] = total;
+        }
+
+        List<Object[]> miembros = new ArrayList<>();
+        for (Long idUsuario : idsUsuarios) {
+            int numEquipos = Math.min(random.nextInt(maxEquiposPorUsuario + 1), idsEquipos.size());
+            Set<Integer> elegidos = new HashSet<>();
+            while (elegidos.size() < numEquipos) {
+                double valor = random.nextDouble() * total;
+                int equipo = 0;
+                while (acumulada[equipo] < valor)
+                    equipo++;
+                elegidos.add(equipo);
+            }
+            for (Integer equipo : elegidos)
+                miembros.add(new Object[]{idsEquipos.get(equipo), idUsuario});
+        }
+
+        JdbcTemplate jdbcTemplate = contexto.getBean(JdbcTemplate.class);
+        new TransactionTemplate(contexto.getBean(PlatformTransactionManager.class)).executeWithoutResult(status ->
+                jdbcTemplate.batchUpdate("insert into equipo_usuario (fk_equipo, fk_usuario) values (?, ?)",
+                        miembros));
+        return miembros.size();
+    }
+
+    public List<Long> getIdsUsuarios() {
+        return idsUsuarios;
+    }
+
+    public List<Long> getIdsEquipos() {
+        return idsEquipos;
+    }
+}
@@ -0,0 +1,54 @@
+package madstodolist.benchmark;
+
+import ch.qos.logback.classic.Level;
+import madstodolist.service.TareaService;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+// Coste de los mensajes de log de los servicios con el nivel debug
+// desactivado: concatenando el mensaje (como se hacía antes) y con
+// mensajes parametrizados. Con el perfilador de GC la métrica
+// gc.alloc.rate.norm da los bytes reservados por llamada, que deben
+// ser 0 en las versiones parametrizadas.
+//
+// Ejecución:
+// ./mvnw -P benchmark test-compile exec:exec -Djmh.incluir=LogsDesactivadosBenchmark -Djmh.opciones="-prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class LogsDesactivadosBenchmark {
+
+    Logger logger;
+    String titulo = "Lavar coche";
+    Long idUsuario = 123456L;
+    Long idTarea = 654321L;
+    int tamPagina = 1000;
+
+    @Setup
+    public void setup() {
+        logger = LoggerFactory.getLogger(TareaService.class);
+        ((ch.qos.logback.classic.Logger) logger).setLevel(Level.INFO);
+    }
+
+    @Benchmark
+    public void concatenado() {
+        logger.debug("Añadiendo tarea " + titulo + " al usuario " + idUsuario);
+    }
+
+    @Benchmark
+    public void parametrizado() {
+        logger.debug("Añadiendo tarea {} al usuario {}", titulo, idUsuario);
+    }
+
+    @Benchmark
+    public void parametrizadoConComprobacionDeNivel() {
+        if (logger.isDebugEnabled())
+            logger.debug("Devolviendo {} tareas del usuario {} a partir de la tarea {}", tamPagina, idUsuario, idTarea);
+    }
+}
@@ -0,0 +1,44 @@
+package madstodolist.benchmark;
+
+import madstodolist.authentication.Pbkdf2PasswordHasher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Mide el coste de calcular y verificar un hash de contraseña según el
+// número de iteraciones de PBKDF2. El tiempo de 'verificar' es el coste
+// de CPU de cada login: con N núcleos dedicados al pool de
+// EjecutorPasswords se atienden como mucho N / tiempo logins por segundo.
+//
+// Ejecución:
+// ./mvnw -P benchmark test-compile exec:exec -Djmh.incluir=PasswordHasherBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PasswordHasherBenchmark {
+
+    @Param({"100000", "310000", "600000"})
+    int iteraciones;
+
+    Pbkdf2PasswordHasher hasher;
+    String hash;
+
+    @Setup
+    public void setup() {
+        hasher = new Pbkdf2PasswordHasher(iteraciones);
+        hash = hasher.hash("12345678");
+    }
+
+    @Benchmark
+    public String hash() {
+        return hasher.hash("12345678");
+    }
+
+    @Benchmark
+    public boolean verificar() {
+        return hasher.verificar("12345678", hash);
+    }
+}
@@ -0,0 +1,183 @@
+package madstodolist.benchmark;
+
+import madstodolist.Application;
+import madstodolist.model.EquipoRepository;
+import madstodolist.model.Tarea;
+import madstodolist.model.Usuario;
+import madstodolist.service.EquipoService;
+import madstodolist.service.TareaService;
+import madstodolist.service.UsuarioService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Tiempo de las operaciones principales de los servicios con la
+// aplicación completa (Spring, Hibernate, caché de segundo nivel y
+// métricas) sobre una base de datos H2 en memoria con los datos de
+// GeneradorDatos. El tamaño de los datos se elige con los parámetros:
+//
+// ./mvnw -P benchmark test-compile exec:exec -Djmh.incluir=ServiciosBenchmark \
+//     -Djmh.opciones="-p numUsuarios=10000 -p tareasPorUsuario=50 -rf json -rff servicios.json"
+//
+// Cada método se ejecuta en una JVM nueva con los datos recién generados.
+// Para comparar versiones se guardan los resultados en JSON (-rf json)
+// y se ejecuta con los mismos parámetros en la misma máquina.
+//
+// El login usa pocas iteraciones de PBKDF2 (parámetro iteraciones) para
+// medir el resto del proceso; el coste del hash lo mide
+// PasswordHasherBenchmark.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiciosBenchmark {
+
+    @Param({"1000"})
+    int numUsuarios;
+
+    @Param({"10", "100"})
+    int tareasPorUsuario;
+
+    @Param({"20"})
+    int numEquipos;
+
+    @Param({"1000"})
+    int iteraciones;
+
+    ConfigurableApplicationContext contexto;
+    TareaService tareaService;
+    EquipoService equipoService;
+    UsuarioService usuarioService;
+    EquipoRepository equipoRepository;
+    EntityManagerFactory entityManagerFactory;
+    List<Long> idsUsuarios;
+    List<Long> idsEquipos;
+
+    // Id de la última tarea de GeneradorDatos. Las tareas con id mayor
+    // son las creadas por nuevaTareaUsuario.
+    long ultimaTareaGenerada;
+
+    // Posición del siguiente usuario o par (usuario, equipo) usado. Se
+    // recorren en orden para no repetir siempre el mismo usuario.
+    int siguiente;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // La aplicación web completa (algunos beans dependen de la sesión
+        // HTTP) en puertos aleatorios
+        contexto = new SpringApplicationBuilder(Application.class)
+                .run(
+                        "--server.port=0",
+                        "--management.server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--spring.sql.init.mode=never",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=50",
+                        "--logging.level.org.hibernate.SQL=info",
+                        "--logging.level.madstodolist=info",
+                        "--logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=warn",
+                        "--madstodolist.password.iteraciones=" + iteraciones);
+        tareaService = contexto.getBean(TareaService.class);
+        equipoService = contexto.getBean(EquipoService.class);
+        usuarioService = contexto.getBean(UsuarioService.class);
+        equipoRepository = contexto.getBean(EquipoRepository.class);
+        entityManagerFactory = contexto.getBean(EntityManagerFactory.class);
+
+        GeneradorDatos datos = new GeneradorDatos(contexto, numUsuarios, tareasPorUsuario, numEquipos);
+        idsUsuarios = datos.getIdsUsuarios();
+        idsEquipos = datos.getIdsEquipos();
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            Long ultima = entityManager.createQuery("select max(t.id) from Tarea t", Long.class).getSingleResult();
+            ultimaTareaGenerada = (ultima == null) ? 0 : ultima;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    // Antes de cada iteración se vuelve a los datos generados: se vacían
+    // los equipos, de forma que addUsuarioEquipo siempre añade un miembro
+    // nuevo, y se borran las tareas creadas por nuevaTareaUsuario, para
+    // que los usuarios no acumulen tareas de una iteración a otra y
+    // allTareasUsuario y nuevaTareaUsuario midan siempre el mismo tamaño
+    // de datos. El borrado en bloque invalida la región de tareas de la
+    // caché de segundo nivel.
+    @Setup(Level.Iteration)
+    public void restaurarDatos() {
+        vaciarEquipos();
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            entityManager.createQuery("delete from Tarea t where t.id > :id")
+                    .setParameter("id", ultimaTareaGenerada)
+                    .executeUpdate();
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+        siguiente = 0;
+    }
+
+    private void vaciarEquipos() {
+        for (Long idEquipo : idsEquipos)
+            equipoRepository.eliminarMiembros(idEquipo);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        contexto.close();
+    }
+
+    private int siguienteUsuario() {
+        int usuario = siguiente % numUsuarios;
+        siguiente++;
+        return usuario;
+    }
+
+    @Benchmark
+    public List<Tarea> allTareasUsuario() {
+        return tareaService.allTareasUsuario(idsUsuarios.get(siguienteUsuario()));
+    }
+
+    @Benchmark
+    public Tarea nuevaTareaUsuario() {
+        return tareaService.nuevaTareaUsuario(idsUsuarios.get(siguienteUsuario()), "Nueva tarea");
+    }
+
+    // Cada llamada añade un miembro nuevo, así que el número de llamadas
+    // por iteración es fijo (batchSize). El resultado es el tiempo de las
+    // 2000 llamadas de cada iteración. Si hay menos pares (usuario, equipo)
+    // que llamadas (numUsuarios * numEquipos < 2000), al agotarlos se
+    // vacían los equipos y se vuelve a empezar; ese vaciado también se
+    // mide, así que sólo son comparables resultados con los mismos datos.
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5, batchSize = 2000)
+    @Measurement(iterations = 10, batchSize = 2000)
+    public void addUsuarioEquipo() {
+        if (siguiente == numUsuarios * numEquipos) {
+            vaciarEquipos();
+            siguiente = 0;
+        }
+        int par = siguiente++;
+        equipoService.addUsuarioEquipo(idsUsuarios.get(par % numUsuarios), idsEquipos.get(par / numUsuarios));
+    }
+
+    @Benchmark
+    public UsuarioService.LoginStatus login() {
+        return usuarioService.login(GeneradorDatos.email(siguienteUsuario()), GeneradorDatos.PASSWORD);
+    }
+
+    @Benchmark
+    public Usuario findAdmin() {
+        return usuarioService.findAdmin();
+    }
+}
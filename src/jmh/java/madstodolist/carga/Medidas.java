@@ -0,0 +1,50 @@
+package madstodolist.carga;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Latencias de las peticiones de cada endpoint y número de errores.
+// Las latencias se guardan todas (en nanosegundos) para calcular los
+// percentiles exactos al final de la prueba.
+public class Medidas {
+
+    private static class Endpoint {
+        long[] latencias = new long[1024];
+        int numPeticiones;
+        int numErrores;
+    }
+
+    private final Map<String, Endpoint> endpoints = new TreeMap<>();
+
+    public synchronized void registrar(String endpoint, long nanos, boolean error) {
+        Endpoint datos = endpoints.computeIfAbsent(endpoint, e -> new Endpoint());
+        if (datos.numPeticiones == datos.latencias.length)
+            datos.latencias = Arrays.copyOf(datos.latencias, datos.latencias.length * 2);
+        datos.latencias[datos.numPeticiones++] = nanos;
+        if (error)
+            datos.numErrores++;
+    }
+
+    private static double percentilMs(long[] ordenadas, int n, double percentil) {
+        int posicion = (int) Math.ceil(percentil * n) - 1;
+        return ordenadas[Math.max(posicion, 0)] / 1e6;
+    }
+
+    // Escribe una línea por endpoint con el número de peticiones, errores,
+    // peticiones por segundo y latencias p50, p99 y máxima en milisegundos
+    public synchronized void informe(PrintStream salida, double segundos) {
+        salida.printf("%-48s %9s %7s %9s %9s %9s %9s%n",
+                "Endpoint", "Peticiones", "Errores", "Pet/s", "p50 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, Endpoint> entrada : endpoints.entrySet()) {
+            Endpoint datos = entrada.getValue();
+            int n = datos.numPeticiones;
+            long[] ordenadas = Arrays.copyOf(datos.latencias, n);
+            Arrays.sort(ordenadas);
+            salida.printf("%-48s %9d %7d %9.1f %9.2f %9.2f %9.2f%n",
+                    entrada.getKey(), n, datos.numErrores, n / segundos,
+                    percentilMs(ordenadas, n, 0.50), percentilMs(ordenadas, n, 0.99), ordenadas[n - 1] / 1e6);
+        }
+    }
+}
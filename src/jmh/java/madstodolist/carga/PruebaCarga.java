@@ -0,0 +1,97 @@
+package madstodolist.carga;
+
+import madstodolist.Application;
+import madstodolist.benchmark.GeneradorDatos;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Prueba de carga HTTP contra los controladores reales. Arranca la
+// aplicación en un puerto aleatorio con una base de datos H2 en memoria,
+// genera los datos con GeneradorDatos y lanza 'usuariosVirtuales' hilos
+// que repiten el escenario de UsuarioVirtual. Tras un calentamiento
+// (cuyas medidas se descartan) mide durante 'duracion' segundos y
+// escribe las peticiones por segundo y las latencias p50 y p99 de cada
+// endpoint.
+//
+// Parámetros (propiedades del sistema, con sus valores por defecto):
+//
+// ./mvnw -P benchmark test-compile exec:java@carga -Dcarga.usuarios=1000 -Dcarga.tareas=20 \
+//     -Dcarga.equipos=50 -Dcarga.equiposPorUsuario=3 -Dcarga.usuariosVirtuales=16 \
+//     -Dcarga.calentamiento=10 -Dcarga.duracion=30 -Dcarga.iteraciones=1000 \
+//     -Dcarga.async=false -Dcarga.hilosServidor=200
+//
+// carga.iteraciones son las iteraciones de PBKDF2 de las contraseñas, que
+// fijan el coste de cada login. Con carga.async=true se activa el modo
+// asíncrono de las peticiones (EjecutorPeticiones); carga.hilosServidor
+// es el número máximo de hilos de Tomcat, para comparar ambos modos con
+// pocos hilos del servidor.
+public class PruebaCarga {
+
+    private static int parametro(String nombre, int valorPorDefecto) {
+        return Integer.getInteger("carga." + nombre, valorPorDefecto);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int numUsuarios = parametro("usuarios", 1000);
+        int tareasPorUsuario = parametro("tareas", 20);
+        int numEquipos = parametro("equipos", 50);
+        int equiposPorUsuario = parametro("equiposPorUsuario", 3);
+        int usuariosVirtuales = parametro("usuariosVirtuales", 16);
+        int calentamiento = parametro("calentamiento", 10);
+        int duracion = parametro("duracion", 30);
+        int iteraciones = parametro("iteraciones", 1000);
+        boolean async = Boolean.getBoolean("carga.async");
+        int hilosServidor = parametro("hilosServidor", 200);
+
+        ConfigurableApplicationContext contexto = new SpringApplicationBuilder(Application.class)
+                .run(
+                        "--server.port=0",
+                        "--server.tomcat.threads.max=" + hilosServidor,
+                        "--madstodolist.async.activo=" + async,
+                        "--management.server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:carga",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--spring.sql.init.mode=never",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=50",
+                        "--logging.level.org.hibernate.SQL=info",
+                        "--logging.level.madstodolist=info",
+                        "--logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=warn",
+                        "--madstodolist.password.iteraciones=" + iteraciones);
+        try {
+            long inicioDatos = System.nanoTime();
+            GeneradorDatos datos = new GeneradorDatos(contexto, numUsuarios, tareasPorUsuario, numEquipos);
+            long miembros = datos.asignarMiembros(equiposPorUsuario, 42);
+            System.out.printf("Datos generados en %.1f s: %d usuarios, %d tareas, %d equipos, %d miembros%n",
+                    (System.nanoTime() - inicioDatos) / 1e9, numUsuarios, (long) numUsuarios * tareasPorUsuario,
+                    numEquipos, miembros);
+
+            int puerto = ((WebServerApplicationContext) contexto).getWebServer().getPort();
+            String urlBase = "http://localhost:" + puerto;
+
+            ejecutar(urlBase, usuariosVirtuales, numUsuarios, calentamiento, new Medidas());
+            Medidas medidas = new Medidas();
+            ejecutar(urlBase, usuariosVirtuales, numUsuarios, duracion, medidas);
+
+            System.out.printf("%d usuarios virtuales durante %d s, %d hilos del servidor, async=%b%n",
+                    usuariosVirtuales, duracion, hilosServidor, async);
+            medidas.informe(System.out, duracion);
+        } finally {
+            contexto.close();
+        }
+    }
+
+    private static void ejecutar(String urlBase, int usuariosVirtuales, int numUsuarios, int segundos,
+                                 Medidas medidas) throws InterruptedException {
+        long fin = System.nanoTime() + TimeUnit.SECONDS.toNanos(segundos);
+        ExecutorService hilos = Executors.newFixedThreadPool(usuariosVirtuales);
+        for (int i = 0; i < usuariosVirtuales; i++)
+            hilos.execute(new UsuarioVirtual(urlBase, i, usuariosVirtuales, numUsuarios, fin, medidas));
+        hilos.shutdown();
+        hilos.awaitTermination(segundos + 60L, TimeUnit.SECONDS);
+    }
+}
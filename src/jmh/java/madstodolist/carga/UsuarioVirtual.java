@@ -0,0 +1,164 @@
+package madstodolist.carga;
+
+import madstodolist.benchmark.GeneradorDatos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Usuario virtual de la prueba de carga. Repite, hasta que se alcanza el
+// instante 'fin', el escenario:
+//
+// login -> listado de tareas -> formulario de edición de una tarea ->
+// editarla -> borrarla -> crear otra -> listado de equipos -> su página
+// siguiente -> detalle de un equipo del que no es miembro -> unirse a
+// él -> salir de él
+//
+// La edición envía la versión de la tarea que muestra el formulario, como
+// hace el navegador (sin ella el servidor la rechaza con un 400).
+// La tarea nueva repone la borrada, de forma que el número de tareas de
+// cada usuario se mantiene durante la prueba; igualmente, el usuario sale
+// del equipo al que se ha unido. Cada usuario virtual usa
+// los usuarios numUsuarioVirtual, numUsuarioVirtual + numUsuariosVirtuales,
+// etc., así que no comparte tareas con otros usuarios virtuales.
+//
+// Las peticiones se hacen con HttpURLConnection sin seguir las
+// redirecciones, de forma que cada medida corresponde a una petición.
+public class UsuarioVirtual implements Runnable {
+
+    private static final Pattern ID_USUARIO = Pattern.compile("/usuarios/(\\d+)/tareas");
+    private static final Pattern ID_TAREA = Pattern.compile("/tareas/(\\d+)/editar");
+    private static final Pattern VERSION = Pattern.compile("name=\"version\" value=\"(\\d+)\"");
+    // Botón "Unirme al equipo" del listado, sólo en los equipos de los que
+    // el usuario no es miembro
+    private static final Pattern UNIRSE_EQUIPO = Pattern.compile("post\\([^/]*(/equipos/(\\d+))/usuarios/\\d+");
+    private static final Pattern SIGUIENTE_EQUIPOS = Pattern.compile("href=\"(/equipos\\?desdeNombre=[^\"]*)\"");
+
+    private final String urlBase;
+    private final int numUsuarioVirtual;
+    private final int numUsuariosVirtuales;
+    private final int numUsuarios;
+    private final long fin;
+    private final Medidas medidas;
+
+    private String cookie;
+
+    public UsuarioVirtual(String urlBase, int numUsuarioVirtual, int numUsuariosVirtuales, int numUsuarios,
+                          long fin, Medidas medidas) {
+        this.urlBase = urlBase;
+        this.numUsuarioVirtual = numUsuarioVirtual;
+        this.numUsuariosVirtuales = numUsuariosVirtuales;
+        this.numUsuarios = numUsuarios;
+        this.fin = fin;
+        this.medidas = medidas;
+    }
+
+    // Respuesta de una petición: código, cabecera Location y cuerpo
+    private static class Respuesta {
+        int codigo;
+        String location;
+        String cuerpo;
+    }
+
+    @Override
+    public void run() {
+        int usuario = numUsuarioVirtual % numUsuarios;
+        while (System.nanoTime() < fin) {
+            try {
+                escenario(usuario);
+            } catch (IOException e) {
+                medidas.registrar("error de conexión", 0, true);
+            }
+            usuario = (usuario + numUsuariosVirtuales) % numUsuarios;
+        }
+    }
+
+    private void escenario(int usuario) throws IOException {
+        cookie = null;
+        Respuesta login = peticion("POST /login", "POST", "/login",
+                "eMail=" + codificar(GeneradorDatos.email(usuario)) + "&password=" + codificar(GeneradorDatos.PASSWORD));
+        Matcher idUsuario = login.location == null ? null : ID_USUARIO.matcher(login.location);
+        if (idUsuario == null || !idUsuario.find())
+            return;
+        String tareas = "/usuarios/" + idUsuario.group(1) + "/tareas";
+
+        Respuesta listado = peticion("GET /usuarios/{id}/tareas", "GET", tareas, null);
+        Matcher idTarea = ID_TAREA.matcher(listado.cuerpo);
+        if (idTarea.find()) {
+            String tarea = "/tareas/" + idTarea.group(1);
+            Respuesta formulario = peticion("GET /tareas/{id}/editar", "GET", tarea + "/editar", null);
+            Matcher version = VERSION.matcher(formulario.cuerpo);
+            if (version.find())
+                peticion("POST /tareas/{id}/editar", "POST", tarea + "/editar",
+                        "titulo=Tarea+modificada&version=" + version.group(1));
+            peticion("DELETE /tareas/{id}", "DELETE", tarea, null);
+        }
+        peticion("POST /usuarios/{id}/tareas/nueva", "POST", tareas + "/nueva", "titulo=Tarea+nueva");
+
+        Respuesta equipos = peticion("GET /equipos", "GET", "/equipos", null);
+        Matcher siguiente = SIGUIENTE_EQUIPOS.matcher(equipos.cuerpo);
+        if (siguiente.find())
+            peticion("GET /equipos?desdeNombre={n}&desdeId={id}", "GET", siguiente.group(1).replace("&amp;", "&"), null);
+        Matcher unirse = UNIRSE_EQUIPO.matcher(equipos.cuerpo);
+        if (unirse.find()) {
+            String equipo = unirse.group(1);
+            String miembro = equipo + "/usuarios/" + idUsuario.group(1);
+            peticion("GET /equipos/{id}", "GET", equipo, null);
+            peticion("POST /equipos/{idEquipo}/usuarios/{idUsuario}", "POST", miembro, null);
+            peticion("DELETE /equipos/{idEquipo}/usuarios/{idUsuario}", "DELETE", miembro, null);
+        }
+    }
+
+    private static String codificar(String valor) throws IOException {
+        return URLEncoder.encode(valor, "UTF-8");
+    }
+
+    // Hace la petición, guarda la cookie de sesión y registra la latencia.
+    // Las respuestas 2xx y 3xx son correctas.
+    private Respuesta peticion(String endpoint, String metodo, String ruta, String formulario) throws IOException {
+        long inicio = System.nanoTime();
+        HttpURLConnection conexion = (HttpURLConnection) new URL(urlBase + ruta).openConnection();
+        conexion.setInstanceFollowRedirects(false);
+        conexion.setRequestMethod(metodo);
+        if (cookie != null)
+            conexion.setRequestProperty("Cookie", cookie);
+        if (formulario != null) {
+            conexion.setDoOutput(true);
+            conexion.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream salida = conexion.getOutputStream()) {
+                salida.write(formulario.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        Respuesta respuesta = new Respuesta();
+        respuesta.codigo = conexion.getResponseCode();
+        respuesta.location = conexion.getHeaderField("Location");
+        String setCookie = conexion.getHeaderField("Set-Cookie");
+        if (setCookie != null)
+            cookie = setCookie.split(";", 2)[0];
+        InputStream entrada = respuesta.codigo < 400 ? conexion.getInputStream() : conexion.getErrorStream();
+        respuesta.cuerpo = leer(entrada);
+        medidas.registrar(endpoint, System.nanoTime() - inicio, respuesta.codigo >= 400);
+        return respuesta;
+    }
+
+    private static String leer(InputStream entrada) throws IOException {
+        if (entrada == null)
+            return "";
+        ByteArrayOutputStream cuerpo = new ByteArrayOutputStream();
+        try (InputStream in = entrada) {
+            byte[] buffer = new byte[8192];
+            int leidos;
+            while ((leidos = in.read(buffer)) != -1)
+                cuerpo.write(buffer, 0, leidos);
+        }
+        return new String(cuerpo.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,74 @@
+package madstodolist.authentication;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Ejecuta los cálculos de hash de contraseñas en un pool de hilos
+// acotado (madstodolist.password.hilos) con una cola limitada
+// (madstodolist.password.cola). Así una ráfaga de logins no ocupa
+// más CPU que la del pool y, si la cola se llena, se rechaza la
+// petición en lugar de bloquear todos los hilos del servidor.
+@Component
+public class EjecutorPasswords {
+
+    private final PasswordHasher passwordHasher;
+    private final ThreadPoolExecutor executor;
+
+    public EjecutorPasswords(PasswordHasher passwordHasher,
+                             @Value("${madstodolist.password.hilos:0}") int hilos,
+                             @Value("${madstodolist.password.cola:100}") int cola) {
+        this.passwordHasher = passwordHasher;
+        int numHilos = (hilos > 0) ? hilos : Runtime.getRuntime().availableProcessors();
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(numHilos, numHilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cola), r -> {
+                    Thread thread = new Thread(r, "password-" + contador.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // Lanza EjecutorPasswordsSaturadoException si la cola está llena
+    public String hash(String password) {
+        return ejecutar(() -> passwordHasher.hash(password));
+    }
+
+    public boolean verificar(String password, String hash) {
+        return ejecutar(() -> passwordHasher.verificar(password, hash));
+    }
+
+    private <T> T ejecutar(Callable<T> tarea) {
+        Future<T> future;
+        try {
+            future = executor.submit(tarea);
+        } catch (RejectedExecutionException e) {
+            throw new EjecutorPasswordsSaturadoException();
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido el cálculo del hash de la contraseña", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,7 @@
+package madstodolist.authentication;
+
+public class EjecutorPasswordsSaturadoException extends RuntimeException {
+    public EjecutorPasswordsSaturadoException() {
+        super("Demasiadas peticiones de login simultáneas");
+    }
+}
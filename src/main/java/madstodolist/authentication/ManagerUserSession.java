@@ -1,6 +1,7 @@
 package madstodolist.authentication;
 
 import madstodolist.controller.exception.UsuarioNoLogeadoException;
+import madstodolist.model.Usuario;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -15,16 +16,38 @@ public class ManagerUserSession {
     // Añadimos el id de usuario en la sesión HTTP para hacer
     // una autorización sencilla. En los métodos de controllers
     // comprobamos si el id del usuario logeado coincide con el obtenido
-    // desde la URL
-    public void logearUsuario(Long idUsuario) {
-        session.setAttribute("idUsuarioLogeado", idUsuario);
+    // desde la URL.
+    // Guardamos también una instantánea con su nombre y si es
+    // administrador, que usan los controllers para la barra de
+    // navegación sin volver a leer el usuario de la base de datos.
+    public void logearUsuario(UsuarioSesion usuarioSesion) {
+        session.setAttribute("idUsuarioLogeado", usuarioSesion.getId());
+        session.setAttribute("usuarioSesion", usuarioSesion);
+    }
+
+    public void logearUsuario(Usuario usuario) {
+        logearUsuario(UsuarioSesion.of(usuario));
     }
 
     public Long usuarioLogeado() {
         return (Long) session.getAttribute("idUsuarioLogeado");
     }
 
+    // Devuelve la instantánea del usuario logeado o null si no hay
+    // usuario logeado. Si la instantánea no corresponde con el usuario
+    // logeado se descarta.
+    public UsuarioSesion usuarioSesion() {
+        Long idUsuarioLogeado = usuarioLogeado();
+        UsuarioSesion usuarioSesion = (UsuarioSesion) session.getAttribute("usuarioSesion");
+        if (idUsuarioLogeado == null || usuarioSesion == null || !idUsuarioLogeado.equals(usuarioSesion.getId())) {
+            session.removeAttribute("usuarioSesion");
+            return null;
+        }
+        return usuarioSesion;
+    }
+
     public void logout() {
         session.setAttribute("idUsuarioLogeado", null);
+        session.removeAttribute("usuarioSesion");
     }
 }
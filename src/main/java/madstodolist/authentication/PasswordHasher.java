@@ -0,0 +1,17 @@
+package madstodolist.authentication;
+
+// Cálculo y comprobación de hashes de contraseñas.
+// El hash guardado incluye los parámetros con los que se calculó,
+// de forma que se puede cambiar el coste sin invalidar los existentes.
+public interface PasswordHasher {
+
+    // Devuelve el hash de la contraseña con el coste configurado
+    String hash(String password);
+
+    // Comprueba en tiempo constante si la contraseña corresponde al hash
+    boolean verificar(String password, String hash);
+
+    // Indica si el hash se calculó con un coste distinto del configurado
+    // (o no es un hash) y debe recalcularse en el próximo login
+    boolean necesitaRehash(String hash);
+}
@@ -0,0 +1,82 @@
+package madstodolist.authentication;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// Hash de contraseñas con PBKDF2-HMAC-SHA256 de la JDK.
+// Formato del hash guardado: pbkdf2-sha256$<iteraciones>$<salt>$<hash>
+// con salt y hash en Base64.
+// El número de iteraciones (propiedad madstodolist.password.iteraciones)
+// fija el coste de cada login; se puede medir con PasswordHasherBenchmark.
+@Component
+public class Pbkdf2PasswordHasher implements PasswordHasher {
+
+    private static final String ALGORITMO = "PBKDF2WithHmacSHA256";
+    private static final String PREFIJO = "pbkdf2-sha256";
+    private static final int BYTES_SALT = 16;
+    private static final int BITS_HASH = 256;
+
+    private final int iteraciones;
+    private final SecureRandom random = new SecureRandom();
+
+    public Pbkdf2PasswordHasher(@Value("${madstodolist.password.iteraciones:310000}") int iteraciones) {
+        if (iteraciones < 1)
+            throw new IllegalArgumentException("El número de iteraciones debe ser mayor que 0");
+        this.iteraciones = iteraciones;
+    }
+
+    @Override
+    public String hash(String password) {
+        byte[] salt = new byte[BYTES_SALT];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iteraciones);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIJO + "$" + iteraciones + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(hash);
+    }
+
+    @Override
+    public boolean verificar(String password, String hash) {
+        if (password == null || hash == null)
+            return false;
+        String[] partes = hash.split("\\$");
+        if (partes.length != 4 || !partes[0].equals(PREFIJO)) {
+            // Contraseña guardada en claro antes de usar hashes.
+            // Se compara en tiempo constante y se recalcula en el login.
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    hash.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            int iteracionesHash = Integer.parseInt(partes[1]);
+            byte[] salt = Base64.getDecoder().decode(partes[2]);
+            byte[] esperado = Base64.getDecoder().decode(partes[3]);
+            return MessageDigest.isEqual(esperado, pbkdf2(password, salt, iteracionesHash));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean necesitaRehash(String hash) {
+        String[] partes = hash.split("\\$");
+        return partes.length != 4 || !partes[0].equals(PREFIJO) || !partes[1].equals(String.valueOf(iteraciones));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iteraciones) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iteraciones, BITS_HASH);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITMO).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se puede calcular el hash de la contraseña", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package madstodolist.authentication;
+
+import madstodolist.model.Usuario;
+
+import java.io.Serializable;
+
+// Instantánea inmutable de los datos del usuario logeado que
+// se guarda en la sesión HTTP. Contiene lo necesario para pintar
+// la barra de navegación sin acceder a la base de datos.
+public final class UsuarioSesion implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+    private final String nombre;
+    private final Boolean isAdmin;
+
+    public UsuarioSesion(Long id, String nombre, Boolean isAdmin) {
+        this.id = id;
+        this.nombre = nombre;
+        this.isAdmin = isAdmin != null && isAdmin;
+    }
+
+    public static UsuarioSesion of(Usuario usuario) {
+        return new UsuarioSesion(usuario.getId(), usuario.getNombre(), usuario.getIsAdmin());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public Boolean getIsAdmin() {
+        return isAdmin;
+    }
+}
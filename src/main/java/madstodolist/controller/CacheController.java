@@ -0,0 +1,43 @@
+package madstodolist.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import madstodolist.authentication.ManagerUserSession;
+import madstodolist.controller.exception.UsuarioNoAdminException;
+import madstodolist.service.CacheService;
+import madstodolist.service.EstadisticasRegion;
+import madstodolist.service.UsuarioService;
+
+@Controller
+public class CacheController {
+
+    @Autowired
+    CacheService cacheService;
+
+    @Autowired
+    UsuarioService usuarioService;
+
+    @Autowired
+    ManagerUserSession managerUserSession;
+
+    private void comprobarUsuarioAdminYLogeado() {
+        Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
+        Long idAdmin = usuarioService.findAdminId();
+
+        if (idAdmin == null || idUsuarioLogeado == null || !idAdmin.equals(idUsuarioLogeado))
+            throw new UsuarioNoAdminException();
+    }
+
+    // Aciertos y fallos de la caché de segundo nivel por región, en JSON
+    @GetMapping("/admin/cache")
+    @ResponseBody
+    public List<EstadisticasRegion> estadisticasCache() {
+        comprobarUsuarioAdminYLogeado();
+        return cacheService.estadisticasRegiones();
+    }
+}
@@ -0,0 +1,156 @@
+package madstodolist.controller;
+
+import madstodolist.controller.exception.ServidorSaturadoException;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Modo de ejecución asíncrono de las peticiones, desactivado por defecto
+// (madstodolist.async.activo). Los controllers ejecutan con 'ejecutar' el
+// código que accede a la base de datos:
+//
+// - Con el modo desactivado se ejecuta directamente en el hilo del
+//   servidor, como el resto de handlers.
+// - Con el modo activado se devuelve a Spring MVC como un Callable, que lo
+//   ejecuta en un pool de 'madstodolist.async.hilos' hilos (por defecto
+//   tantos como conexiones tiene el pool de JDBC) y libera mientras tanto
+//   el hilo del servidor. Así un número pequeño de hilos del servidor
+//   atiende muchas conexiones y como mucho hay tantas peticiones usando
+//   JDBC como hilos tiene el pool.
+//
+// Como mucho se admiten 'hilos' + 'madstodolist.async.cola' peticiones a
+// la vez; el resto se rechazan con un 503 (ServidorSaturadoException) en
+// lugar de acumularse en memoria. El tiempo máximo de cada petición es
+// spring.mvc.async.request-timeout. Si una petición termina por timeout
+// mientras su handler se ejecuta, la plaza no se libera hasta que el
+// handler acaba; si todavía no había empezado, el handler ya no se ejecuta.
+//
+// No usan 'ejecutar', y se ejecutan siempre en el hilo del servidor:
+//
+// - Los formularios que no consultan la base de datos (sólo la sesión) y
+//   el login y el registro, cuyo coste es el hash de la contraseña, que
+//   ya está acotado por EjecutorPasswords.
+// - La importación y la exportación de tareas, que leen el cuerpo de la
+//   petición o escriben la respuesta a medida que avanzan y pueden durar
+//   más que el timeout de las peticiones asíncronas. Cada una ocupa un
+//   hilo del servidor y, por lotes, una conexión del pool de JDBC.
+@Component
+public class EjecutorPeticiones implements WebMvcConfigurer {
+
+    private final boolean activo;
+    private final Semaphore plazas;
+    private final ThreadPoolTaskExecutor executor;
+
+    public EjecutorPeticiones(@Value("${madstodolist.async.activo:false}") boolean activo,
+                              @Value("${madstodolist.async.hilos:${spring.datasource.hikari.maximum-pool-size:10}}") int hilos,
+                              @Value("${madstodolist.async.cola:500}") int cola) {
+        this.activo = activo;
+        this.plazas = new Semaphore(hilos + cola);
+        if (activo) {
+            executor = new ThreadPoolTaskExecutor();
+            executor.setCorePoolSize(hilos);
+            executor.setMaxPoolSize(hilos);
+            executor.setThreadNamePrefix("peticion-");
+            executor.setDaemon(true);
+            executor.initialize();
+        } else {
+            executor = null;
+        }
+    }
+
+    public boolean isActivo() {
+        return activo;
+    }
+
+    // Estados de una TareaPeticion
+    private static final int PENDIENTE = 0;
+    private static final int EN_EJECUCION = 1;
+    private static final int TERMINADA = 2;
+
+    // Tarea de una petición. La plaza se libera al terminar el handler o,
+    // si la petición termina (por ejemplo, por timeout) antes de que el
+    // handler empiece, al terminar la petición; en ese caso el handler ya
+    // no se ejecuta. Así nunca hay más handlers en cola o en ejecución que
+    // plazas. El contexto de logs (id de la petición) se copia del hilo
+    // del servidor.
+    private class TareaPeticion implements Callable<Object> {
+        private final Callable<?> handler;
+        private final Map<String, String> contextoLogs = MDC.getCopyOfContextMap();
+        private final AtomicInteger estado = new AtomicInteger(PENDIENTE);
+
+        TareaPeticion(Callable<?> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            if (!estado.compareAndSet(PENDIENTE, EN_EJECUCION))
+                return null;
+            if (contextoLogs != null)
+                MDC.setContextMap(contextoLogs);
+            try {
+                return handler.call();
+            } finally {
+                MDC.clear();
+                estado.set(TERMINADA);
+                plazas.release();
+            }
+        }
+
+        // La petición ha terminado
+        void peticionTerminada() {
+            if (estado.compareAndSet(PENDIENTE, TERMINADA))
+                plazas.release();
+        }
+    }
+
+    // Devuelve el resultado del handler o, con el modo asíncrono activado,
+    // un Callable que Spring MVC ejecuta en el pool. Los controllers que lo
+    // usan declaran Object como tipo devuelto; Spring elige cómo tratar el
+    // resultado según su tipo en ejecución.
+    public Object ejecutar(Callable<?> handler) {
+        if (!activo) {
+            try {
+                return handler.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        if (!plazas.tryAcquire())
+            throw new ServidorSaturadoException();
+        return new TareaPeticion(handler);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        if (!activo)
+            return;
+        configurer.setTaskExecutor(executor);
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                if (task instanceof TareaPeticion)
+                    ((TareaPeticion) task).peticionTerminada();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        if (executor != null)
+            executor.shutdown();
+    }
+}
@@ -1,7 +1,5 @@
 package madstodolist.controller;
 
-import java.util.List;
-
 import javax.servlet.http.HttpSession;
 import javax.validation.Valid;
 
@@ -13,21 +11,33 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.validation.BindingResult;
 
 import madstodolist.authentication.ManagerUserSession;
+import madstodolist.controller.exception.ConflictoEdicionException;
 import madstodolist.controller.exception.EquipoNotFoundException;
 import madstodolist.controller.exception.UsuarioNoLogeadoException;
+import madstodolist.controller.exception.VersionRequeridaException;
 import madstodolist.model.Equipo;
-import madstodolist.model.Usuario;
+import madstodolist.model.MiembroEquipo;
+import madstodolist.service.ConflictoVersionException;
+import madstodolist.service.EquipoListado;
 import madstodolist.service.EquipoService;
+import madstodolist.service.PaginaMiembrosEquipo;
 import madstodolist.service.UsuarioService;
 
 @Controller
 public class EquipoController {
 
+    // Número de equipos por página en el listado de equipos
+    static final int EQUIPOS_POR_PAGINA = 50;
+
+    // Número de miembros por página en el listado de miembros de un equipo
+    static final int MIEMBROS_POR_PAGINA = 50;
+
     @Autowired
     EquipoService equipoService;
 
@@ -37,28 +47,37 @@ public class EquipoController {
     @Autowired
     ManagerUserSession managerUserSession;
 
+    @Autowired
+    EjecutorPeticiones ejecutorPeticiones;
+
     private void comprobarUsuarioAdminYLogeado(Long idUsuario) {
         Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
-        Usuario admin = usuarioService.findAdmin();
+        Long idAdmin = usuarioService.findAdminId();
 
-        if (admin == null || idUsuarioLogeado == null || admin.getId() != idUsuarioLogeado)
+        if (idAdmin == null || idUsuarioLogeado == null || !idAdmin.equals(idUsuarioLogeado))
             throw new UsuarioNoLogeadoException();
-
     }
 
     @GetMapping("/equipos")
-    public String listadoEquipos(Model model, HttpSession session) {
-        Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
-
-        if (idUsuarioLogeado == null)
-            throw new UsuarioNoLogeadoException();
-
-        List<Equipo> equipos = equipoService.findAllOrderedByName();
-        Usuario usuario = usuarioService.findById(idUsuarioLogeado);
-
-        model.addAttribute("usuario", usuario);
-        model.addAttribute("equipos", equipos);
-        return "listaEquipos";
+    public Object listadoEquipos(@RequestParam(value="desdeNombre", required=false) String desdeNombre,
+                                 @RequestParam(value="desdeId", required=false) Long desdeId,
+                                 Model model, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
+
+            if (idUsuarioLogeado == null)
+                throw new UsuarioNoLogeadoException();
+
+            PaginaListado<EquipoListado> equipos = PaginaListado.leer(EQUIPOS_POR_PAGINA, tamConsulta ->
+                    equipoService.listadoEquiposUsuario(idUsuarioLogeado, desdeNombre, desdeId, tamConsulta));
+
+            model.addAttribute("usuario", managerUserSession.usuarioSesion());
+            model.addAttribute("equipos", equipos.getElementos());
+            model.addAttribute("totalEquipos", equipoService.numeroEquipos());
+            model.addAttribute("primeraPagina", desdeId == null);
+            model.addAttribute("siguiente", equipos.siguiente(equipo -> equipo));
+            return "listaEquipos";
+        });
     }
 
     @GetMapping("/equipos/nuevo")
@@ -70,123 +89,143 @@ public class EquipoController {
 
         EquipoData equipoData = new EquipoData();
 
-        Usuario usuario = usuarioService.findById(idUsuarioLogeado);
-        model.addAttribute("usuario", usuario);
+        model.addAttribute("usuario", managerUserSession.usuarioSesion());
         model.addAttribute("equipoData", equipoData);
         return "formNuevoEquipo";
     }
 
     @PostMapping("/equipos/nuevo")
-    public String nuevoEquipo(Model model, @Valid EquipoData equipoData,
+    public Object nuevoEquipo(Model model, @Valid EquipoData equipoData,
             BindingResult result) {
-        Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
+        return ejecutorPeticiones.ejecutar(() -> {
+            Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
 
-        if (result.hasErrors()) {
-            return "formNuevoEquipo";
-        }
+            if (result.hasErrors()) {
+                return "formNuevoEquipo";
+            }
 
-        if (idUsuarioLogeado == null)
-            throw new UsuarioNoLogeadoException();
+            if (idUsuarioLogeado == null)
+                throw new UsuarioNoLogeadoException();
 
-        equipoService.crearEquipo(equipoData.getNombre());
-        return "redirect:/equipos";
+            equipoService.crearEquipo(equipoData.getNombre());
+            return "redirect:/equipos";
+        });
     }
 
     @GetMapping("/equipos/{id}")
-    public String listadoUsuariosEquipos(@PathVariable(value = "id") Long equipo_id, Model model, HttpSession session) {
-        Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
-
-        if (idUsuarioLogeado == null)
-            throw new UsuarioNoLogeadoException();
-
-        Usuario usuario = usuarioService.findById(idUsuarioLogeado);
-        Equipo equipo = equipoService.recuperarEquipo(equipo_id);
-        List<Usuario> usuarios = equipoService.usuariosEquipo(equipo_id);
-        model.addAttribute("usuario", usuario);
-        model.addAttribute("usuarios", usuarios);
-        model.addAttribute("equipo", equipo);
-        return "listaUsuariosEquipos";
+    public Object listadoUsuariosEquipos(@PathVariable(value = "id") Long equipo_id,
+                                         @RequestParam(value="desde", required=false) Long desde,
+                                         Model model, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
+
+            if (idUsuarioLogeado == null)
+                throw new UsuarioNoLogeadoException();
+
+            PaginaMiembrosEquipo pagina = equipoService.miembrosEquipoPaginados(equipo_id, desde,
+                    PaginaListado.aPedir(MIEMBROS_POR_PAGINA));
+            PaginaListado<MiembroEquipo> usuarios = PaginaListado.de(pagina.getMiembros(), MIEMBROS_POR_PAGINA);
+
+            model.addAttribute("usuario", managerUserSession.usuarioSesion());
+            model.addAttribute("usuarios", usuarios.getElementos());
+            model.addAttribute("numMiembros", pagina.getNumMiembros());
+            model.addAttribute("equipo", pagina.getEquipo());
+            model.addAttribute("desde", desde);
+            model.addAttribute("siguiente", usuarios.siguiente(MiembroEquipo::getId));
+            return "listaUsuariosEquipos";
+        });
     }
 
     @PostMapping("/equipos/{idEquipo}/usuarios/{idUsuario}")
     @ResponseBody
-    public String nuevoUsuarioEquipo(@PathVariable(value = "idEquipo") Long equipo_id,
+    public Object nuevoUsuarioEquipo(@PathVariable(value = "idEquipo") Long equipo_id,
             @PathVariable(value = "idUsuario") Long usuario_id,
             Model model, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
 
-        Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
+            if (idUsuarioLogeado == null)
+                throw new UsuarioNoLogeadoException();
 
-        if (idUsuarioLogeado == null)
-            throw new UsuarioNoLogeadoException();
-
-        equipoService.addUsuarioEquipo(usuario_id, equipo_id);
-        return "";
+            equipoService.addUsuarioEquipo(usuario_id, equipo_id);
+            return "";
+        });
     }
 
     @DeleteMapping("/equipos/{idEquipo}/usuarios/{idUsuario}")
     @ResponseBody
-    public String eliminarUsuarioEquipo(@PathVariable(value = "idEquipo") Long equipo_id,
+    public Object eliminarUsuarioEquipo(@PathVariable(value = "idEquipo") Long equipo_id,
             @PathVariable(value = "idUsuario") Long usuario_id,
             Model model, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
 
-        Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
+            if (idUsuarioLogeado == null)
+                throw new UsuarioNoLogeadoException();
 
-        if (idUsuarioLogeado == null)
-            throw new UsuarioNoLogeadoException();
-
-        equipoService.removeUsuarioEquipo(usuario_id, equipo_id);
-        return "";
+            equipoService.removeUsuarioEquipo(usuario_id, equipo_id);
+            return "";
+        });
     }
 
     @GetMapping("/equipos/{id}/editar")
-    public String formEditarNombreEquipo(@PathVariable(value = "id") Long id_equipo,
+    public Object formEditarNombreEquipo(@PathVariable(value = "id") Long id_equipo,
             @ModelAttribute EquipoData equipoData, Model model) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            comprobarUsuarioAdminYLogeado(managerUserSession.usuarioLogeado());
 
-        comprobarUsuarioAdminYLogeado(managerUserSession.usuarioLogeado());
-
-        Equipo equipo = equipoService.recuperarEquipo(id_equipo);
+            Equipo equipo = equipoService.recuperarEquipo(id_equipo);
 
-        if (equipo == null)
-            throw new EquipoNotFoundException();
+            if (equipo == null)
+                throw new EquipoNotFoundException();
 
-        Usuario admin = usuarioService.findAdmin();
-
-        model.addAttribute("equipo", equipo);
-        model.addAttribute("usuario", admin);
-        equipoData.setNombre(equipo.getNombre());
-        return "formEditarEquipo";
+            model.addAttribute("equipo", equipo);
+            model.addAttribute("usuario", managerUserSession.usuarioSesion());
+            equipoData.setNombre(equipo.getNombre());
+            equipoData.setVersion(equipo.getVersion());
+            return "formEditarEquipo";
+        });
     }
 
     @PostMapping("/equipos/{id}/editar")
-    public String grabaEquipoModificado(@PathVariable(value = "id") Long equipo_id,
+    public Object grabaEquipoModificado(@PathVariable(value = "id") Long equipo_id,
             Model model, RedirectAttributes flash, @ModelAttribute EquipoData equipoData) {
-
-        comprobarUsuarioAdminYLogeado(managerUserSession.usuarioLogeado());
-
-        Equipo equipo = equipoService.recuperarEquipo(equipo_id);
-
-        if (equipo == null)
-            throw new EquipoNotFoundException();
-
-        equipoService.modificaNombreEquipo(equipo_id, equipoData.getNombre());
-        flash.addFlashAttribute("mensaje", "Equipo modificado correctamente");
+        return ejecutorPeticiones.ejecutar(() -> {
+            comprobarUsuarioAdminYLogeado(managerUserSession.usuarioLogeado());
+
+            Equipo equipo = equipoService.recuperarEquipo(equipo_id);
+
+            if (equipo == null)
+                throw new EquipoNotFoundException();
+
+            // Ver TareaController.grabaTareaModificada
+            if (equipoData.getVersion() == null)
+                throw new VersionRequeridaException();
+            try {
+                equipoService.modificaNombreEquipo(equipo_id, equipoData.getNombre(), equipoData.getVersion());
+            } catch (ConflictoVersionException e) {
+                throw new ConflictoEdicionException();
+            }
+            flash.addFlashAttribute("mensaje", "Equipo modificado correctamente");
         
-        return "redirect:/equipos/" + equipo.getId();
+            return "redirect:/equipos/" + equipo.getId();
+        });
     }
 
     @DeleteMapping("/equipos/{idEquipo}")
     @ResponseBody
-    public String eliminarEquipo(@PathVariable(value = "idEquipo") Long equipo_id,
+    public Object eliminarEquipo(@PathVariable(value = "idEquipo") Long equipo_id,
             Model model, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            comprobarUsuarioAdminYLogeado(managerUserSession.usuarioLogeado());
 
-        comprobarUsuarioAdminYLogeado(managerUserSession.usuarioLogeado());
-
-        Equipo equipo = equipoService.recuperarEquipo(equipo_id);
+            Equipo equipo = equipoService.recuperarEquipo(equipo_id);
 
-        if (equipo == null)
-            throw new EquipoNotFoundException();
+            if (equipo == null)
+                throw new EquipoNotFoundException();
 
-        equipoService.removeEquipo(equipo_id);
-        return "";
+            equipoService.removeEquipo(equipo_id);
+            return "";
+        });
     }
 }
@@ -2,6 +2,8 @@ package madstodolist.controller;
 
 public class EquipoData {
     private String nombre;
+    // Versión leída al mostrar el formulario (bloqueo optimista)
+    private Long version;
 
     public String getNombre() {
         return nombre;
@@ -10,4 +12,12 @@ public class EquipoData {
     public void setNombre(String nombre) {
         this.nombre = nombre;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,100 @@
+package madstodolist.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import madstodolist.model.Tarea;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+// Escribe las tareas exportadas, una a una, en el Writer de la respuesta.
+// Formatos:
+// - CSV: cabecera "id,titulo" (aunque no haya tareas) y una fila por
+//   tarea; la importación localiza el título por la cabecera
+// - NDJSON: un objeto JSON {"id": ..., "titulo": ...} por línea
+public abstract class EscritorTareas implements Consumer<Tarea> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    protected final Writer writer;
+
+    protected EscritorTareas(Writer writer) {
+        this.writer = writer;
+    }
+
+    public static EscritorTareas csv(Writer writer) {
+        return new EscritorCsv(writer);
+    }
+
+    public static EscritorTareas ndjson(Writer writer) {
+        return new EscritorNdjson(writer);
+    }
+
+    protected abstract void escribir(Tarea tarea) throws IOException;
+
+    @Override
+    public void accept(Tarea tarea) {
+        try {
+            escribir(tarea);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class EscritorCsv extends EscritorTareas {
+
+        EscritorCsv(Writer writer) {
+            super(writer);
+            try {
+                writer.write("id,titulo\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        protected void escribir(Tarea tarea) throws IOException {
+            writer.write(tarea.getId().toString());
+            writer.write(',');
+            writer.write(campo(tarea.getTitulo()));
+            writer.write('\n');
+        }
+
+        // Entrecomilla el campo si contiene comas, comillas o saltos de línea
+        private static String campo(String valor) {
+            if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0
+                    && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0)
+                return valor;
+            return '"' + valor.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    private static class EscritorNdjson extends EscritorTareas {
+        private final JsonGenerator generator;
+
+        EscritorNdjson(Writer writer) {
+            super(writer);
+            try {
+                this.generator = JSON_FACTORY.createGenerator(writer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Separamos los objetos con saltos de línea en lugar del
+            // espacio que Jackson escribe por defecto
+            this.generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        protected void escribir(Tarea tarea) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("id", tarea.getId());
+            generator.writeStringField("titulo", tarea.getTitulo());
+            generator.writeEndObject();
+            generator.flush();
+            writer.write('\n');
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package madstodolist.controller;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+// Asigna a cada petición un id de correlación que se guarda en el MDC
+// ("idPeticion") para que aparezca en todas sus líneas de log, y se
+// devuelve en la cabecera X-Request-Id. Si la petición ya trae un id
+// válido en esa cabecera (por ejemplo, de un proxy) se reutiliza.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class IdPeticionFilter extends OncePerRequestFilter {
+
+    public static final String CABECERA = "X-Request-Id";
+    public static final String CLAVE_MDC = "idPeticion";
+
+    private static final Pattern ID_VALIDO = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String idPeticion = request.getHeader(CABECERA);
+        if (idPeticion == null || !ID_VALIDO.matcher(idPeticion).matches())
+            idPeticion = UUID.randomUUID().toString();
+
+        MDC.put(CLAVE_MDC, idPeticion);
+        response.setHeader(CABECERA, idPeticion);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(CLAVE_MDC);
+        }
+    }
+}
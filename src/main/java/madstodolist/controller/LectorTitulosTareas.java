@@ -0,0 +1,237 @@
+package madstodolist.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import madstodolist.controller.exception.FormatoNoValidoException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Lee de forma incremental los títulos de tareas de un fichero de
+// importación. Sólo se mantiene en memoria el título que se está
+// leyendo, por lo que el tamaño del fichero no influye en la memoria usada.
+//
+// Formatos admitidos:
+// - texto: un título por línea
+// - CSV: admite comillas dobles (también con saltos de línea dentro) y
+//   una cabecera opcional; si la cabecera tiene una columna "titulo" el
+//   título se lee de ella (como en el CSV exportado, "id,titulo") y si no
+//   hay cabecera el título es la primera columna
+// - JSON: un array de títulos o de objetos con el campo "titulo",
+//   o una secuencia de ellos (NDJSON)
+public abstract class LectorTitulosTareas implements Iterator<String> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private String siguiente;
+    private boolean terminado;
+
+    public static LectorTitulosTareas texto(Reader reader) {
+        return new LectorLineas(reader);
+    }
+
+    public static LectorTitulosTareas csv(Reader reader) {
+        return new LectorCsv(reader);
+    }
+
+    public static LectorTitulosTareas json(InputStream inputStream) {
+        try {
+            return new LectorJson(JSON_FACTORY.createParser(inputStream));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Devuelve el siguiente título o null si no quedan más
+    protected abstract String leerSiguiente() throws IOException;
+
+    @Override
+    public boolean hasNext() {
+        if (siguiente == null && !terminado) {
+            try {
+                siguiente = leerSiguiente();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            terminado = (siguiente == null);
+        }
+        return siguiente != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        String titulo = siguiente;
+        siguiente = null;
+        return titulo;
+    }
+
+    private static class LectorLineas extends LectorTitulosTareas {
+        private final BufferedReader reader;
+
+        LectorLineas(Reader reader) {
+            this.reader = new BufferedReader(reader);
+        }
+
+        @Override
+        protected String leerSiguiente() throws IOException {
+            return reader.readLine();
+        }
+    }
+
+    private static class LectorCsv extends LectorTitulosTareas {
+        private final BufferedReader reader;
+        // Campos de la fila que se está leyendo
+        private final List<String> campos = new ArrayList<>();
+        private final StringBuilder campo = new StringBuilder();
+        // Líneas leídas y línea en la que empieza la fila actual, para
+        // indicarla en los errores
+        private int lineas = 0;
+        private int lineaFila = 0;
+        // Columna del título; -1 hasta leer la primera fila
+        private int columnaTitulo = -1;
+
+        LectorCsv(Reader reader) {
+            this.reader = new BufferedReader(reader);
+        }
+
+        @Override
+        protected String leerSiguiente() throws IOException {
+            if (!leerFila())
+                return null;
+            if (columnaTitulo < 0) {
+                columnaTitulo = columnaCabecera();
+                if (columnaTitulo >= 0) {
+                    if (!leerFila())
+                        return null;
+                } else {
+                    columnaTitulo = 0;
+                }
+            }
+            if (columnaTitulo >= campos.size())
+                throw new FormatoNoValidoException("Falta la columna del título en la línea " + lineaFila);
+            return campos.get(columnaTitulo);
+        }
+
+        // Posición de la columna "titulo" si la primera fila es una
+        // cabecera o -1 si no lo es
+        private int columnaCabecera() {
+            for (int i = 0; i < campos.size(); i++) {
+                if (campos.get(i).trim().equalsIgnoreCase("titulo"))
+                    return i;
+            }
+            return -1;
+        }
+
+        // Lee los campos de la siguiente fila. Un campo entre comillas puede
+        // contener comas, comillas dobladas ("") y saltos de línea.
+        // Devuelve false si no quedan filas.
+        private boolean leerFila() throws IOException {
+            campos.clear();
+            campo.setLength(0);
+            int c = reader.read();
+            if (c < 0)
+                return false;
+            lineaFila = lineas + 1;
+            boolean entreComillas = false;
+            while (true) {
+                if (entreComillas) {
+                    if (c < 0)
+                        throw new FormatoNoValidoException("Comillas sin cerrar en la línea " + lineaFila);
+                    if (c == '"') {
+                        c = reader.read();
+                        if (c != '"') {
+                            // Fin del campo entre comillas: el carácter
+                            // leído se trata fuera de las comillas
+                            entreComillas = false;
+                            continue;
+                        }
+                    }
+                    if (c == '\n')
+                        lineas++;
+                    campo.append((char) c);
+                } else if (c < 0 || c == '\n') {
+                    if (c == '\n')
+                        lineas++;
+                    break;
+                } else if (c == ',') {
+                    campos.add(campo.toString());
+                    campo.setLength(0);
+                } else if (c == '"' && campo.length() == 0) {
+                    entreComillas = true;
+                } else if (c != '\r') {
+                    campo.append((char) c);
+                }
+                c = reader.read();
+            }
+            campos.add(campo.toString());
+            return true;
+        }
+    }
+
+    private static class LectorJson extends LectorTitulosTareas {
+        private final JsonParser parser;
+        private boolean inicio = true;
+        private boolean enArray = false;
+
+        LectorJson(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        protected String leerSiguiente() throws IOException {
+            try {
+                JsonToken token = parser.nextToken();
+                if (inicio) {
+                    inicio = false;
+                    if (token == JsonToken.START_ARRAY) {
+                        enArray = true;
+                        token = parser.nextToken();
+                    }
+                }
+                if (token == null || (enArray && token == JsonToken.END_ARRAY)) {
+                    parser.close();
+                    return null;
+                }
+                if (token == JsonToken.VALUE_STRING)
+                    return parser.getText();
+                if (token == JsonToken.START_OBJECT)
+                    return leerObjeto();
+                throw new FormatoNoValidoException("Se esperaba un título o un objeto y se ha encontrado " + token
+                        + " en la línea " + linea());
+            } catch (JsonProcessingException e) {
+                throw new FormatoNoValidoException(e.getOriginalMessage() + " en la línea " + linea());
+            }
+        }
+
+        private int linea() {
+            return parser.getCurrentLocation().getLineNr();
+        }
+
+        // Devuelve el campo "titulo" del objeto, ignorando el resto
+        private String leerObjeto() throws IOException {
+            String titulo = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String campo = parser.getCurrentName();
+                JsonToken valor = parser.nextToken();
+                if ("titulo".equals(campo) && valor == JsonToken.VALUE_STRING)
+                    titulo = parser.getText();
+                else
+                    parser.skipChildren();
+            }
+            if (titulo == null)
+                throw new FormatoNoValidoException("Objeto sin campo \"titulo\" en la línea " + linea());
+            return titulo;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package madstodolist.controller;
 
+import madstodolist.authentication.EjecutorPasswordsSaturadoException;
 import madstodolist.authentication.ManagerUserSession;
+import madstodolist.authentication.UsuarioSesion;
 import madstodolist.model.Usuario;
 import madstodolist.service.TareaService;
+import madstodolist.service.ResultadoLogin;
 import madstodolist.service.UsuarioService;
+import madstodolist.service.UsuarioServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -35,18 +39,28 @@ public class LoginController {
         return "formLogin";
     }
 
+    // El login no pasa por EjecutorPeticiones: casi todo su tiempo es la
+    // comprobación de la contraseña, que ya se hace en el pool acotado de
+    // EjecutorPasswords, y ocuparía un hilo del pool de peticiones (y una
+    // de sus plazas) sin usar la conexión JDBC.
     @PostMapping("/login")
     public String loginSubmit(@ModelAttribute LoginData loginData, Model model, HttpSession session) {
-
-        // Llamada al servicio para comprobar si el login es correcto
-        UsuarioService.LoginStatus loginStatus = usuarioService.login(loginData.geteMail(), loginData.getPassword());
+        // Llamada al servicio para comprobar si el login es correcto.
+        // Si lo es, el resultado ya contiene los datos del usuario
+        ResultadoLogin resultado;
+        try {
+            resultado = usuarioService.autenticar(loginData.geteMail(), loginData.getPassword());
+        } catch (EjecutorPasswordsSaturadoException e) {
+            model.addAttribute("error", "Servidor ocupado, inténtalo de nuevo en unos segundos");
+            return "formLogin";
+        }
+        UsuarioService.LoginStatus loginStatus = resultado.getStatus();
 
         if (loginStatus == UsuarioService.LoginStatus.LOGIN_OK) {
-            Usuario usuario = usuarioService.findByEmail(loginData.geteMail());
-
-            managerUserSession.logearUsuario(usuario.getId());
+            managerUserSession.logearUsuario(new UsuarioSesion(resultado.getIdUsuario(),
+                    resultado.getNombre(), resultado.getIsAdmin()));
 
-            return "redirect:/usuarios/" + usuario.getId() + "/tareas";
+            return "redirect:/usuarios/" + resultado.getIdUsuario() + "/tareas";
         } else if (loginStatus == UsuarioService.LoginStatus.USER_NOT_FOUND) {
             model.addAttribute("error", "No existe usuario");
             return "formLogin";
@@ -60,7 +74,7 @@ public class LoginController {
     @GetMapping("/registro")
     public String registroForm(Model model) {
         RegistroData registroData = new RegistroData();
-        boolean isAdmin = (usuarioService.findAdmin() == null) ? false : true;
+        boolean isAdmin = usuarioService.findAdminId() != null;
         registroData.setIsAdmin(isAdmin);  
         
         model.addAttribute("registroData", registroData);
@@ -74,13 +88,7 @@ public class LoginController {
             return "formRegistro";
         }
 
-        if (usuarioService.findByEmail(registroData.geteMail()) != null) {
-            model.addAttribute("registroData", registroData);
-            model.addAttribute("error", "El usuario " + registroData.geteMail() + " ya existe");
-            return "formRegistro";
-        }
-
-        if (usuarioService.findAdmin() != null) 
+        if (usuarioService.findAdminId() != null)
             registroData.setIsAdmin(false);
 
         Usuario usuario = new Usuario(registroData.geteMail());
@@ -89,13 +97,26 @@ public class LoginController {
         usuario.setNombre(registroData.getNombre());
         usuario.setIsAdmin(registroData.getIsAdmin());
 
-        if (usuario.getIsAdmin()) {
+        // Si el email ya está registrado el servicio lo detecta al insertar.
+        // Si el pool de hash de contraseñas está lleno se vuelve a mostrar
+        // el formulario, igual que en el login
+        try {
             usuarioService.registrar(usuario);
-            managerUserSession.logearUsuario(usuario.getId());
+        } catch (UsuarioServiceException e) {
+            model.addAttribute("registroData", registroData);
+            model.addAttribute("error", e.getMessage());
+            return "formRegistro";
+        } catch (EjecutorPasswordsSaturadoException e) {
+            model.addAttribute("registroData", registroData);
+            model.addAttribute("error", "Servidor ocupado, inténtalo de nuevo en unos segundos");
+            return "formRegistro";
+        }
+
+        if (usuario.getIsAdmin()) {
+            managerUserSession.logearUsuario(usuario);
             return "redirect:/registrados";
         }
 
-        usuarioService.registrar(usuario);
         return "redirect:/login";
    }
 
@@ -0,0 +1,44 @@
+package madstodolist.controller;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// Página de un listado paginado por clave (keyset). A la consulta se le
+// pide un elemento más de los que se muestran: si llega, existe una página
+// siguiente (sin tener que contar los elementos) y no se muestra.
+class PaginaListado<T> {
+    private final List<T> elementos;
+    private final boolean hayMas;
+
+    private PaginaListado(List<T> elementos, boolean hayMas) {
+        this.elementos = elementos;
+        this.hayMas = hayMas;
+    }
+
+    // Número de elementos que hay que pedir a la consulta para una página
+    // de 'tamPagina' elementos
+    static int aPedir(int tamPagina) {
+        return tamPagina + 1;
+    }
+
+    // Página a partir de los elementos leídos pidiendo aPedir(tamPagina)
+    static <T> PaginaListado<T> de(List<T> leidos, int tamPagina) {
+        boolean hayMas = leidos.size() > tamPagina;
+        return new PaginaListado<>(hayMas ? leidos.subList(0, tamPagina) : leidos, hayMas);
+    }
+
+    static <T> PaginaListado<T> leer(int tamPagina, IntFunction<List<T>> consulta) {
+        return de(consulta.apply(aPedir(tamPagina)), tamPagina);
+    }
+
+    List<T> getElementos() {
+        return elementos;
+    }
+
+    // Clave del último elemento mostrado, desde la que empieza la página
+    // siguiente, o null si ésta es la última
+    <K> K siguiente(Function<T, K> clave) {
+        return hayMas ? clave.apply(elementos.get(elementos.size() - 1)) : null;
+    }
+}
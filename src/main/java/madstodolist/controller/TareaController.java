@@ -1,33 +1,54 @@
 package madstodolist.controller;
 
 import madstodolist.authentication.ManagerUserSession;
+import madstodolist.controller.exception.ConflictoEdicionException;
+import madstodolist.controller.exception.FormatoNoValidoException;
+import madstodolist.controller.exception.ImportacionInterrumpidaException;
 import madstodolist.controller.exception.UsuarioNoLogeadoException;
 import madstodolist.controller.exception.TareaNotFoundException;
+import madstodolist.controller.exception.VersionRequeridaException;
 import madstodolist.model.Tarea;
-import madstodolist.model.Usuario;
+import madstodolist.service.ConflictoVersionException;
+import madstodolist.service.ResultadoImportacion;
 import madstodolist.service.TareaService;
-import madstodolist.service.UsuarioService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Controller
 public class TareaController {
 
-    @Autowired
-    UsuarioService usuarioService;
-
     @Autowired
     TareaService tareaService;
 
     @Autowired
     ManagerUserSession managerUserSession;
 
+    @Autowired
+    EjecutorPeticiones ejecutorPeticiones;
+
+    // Número de tareas que se muestran en cada página del listado
+    static final int TAREAS_POR_PAGINA = 20;
+
+    // Número de tareas que se guardan en cada transacción al importar
+    static final int TAM_LOTE_IMPORTACION = 500;
+
     private void comprobarUsuarioLogeado(Long idUsuario) {
         Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
         if (!idUsuario.equals(idUsuarioLogeado))
@@ -41,85 +62,185 @@ public class TareaController {
 
         comprobarUsuarioLogeado(idUsuario);
 
-        Usuario usuario = usuarioService.findById(idUsuario);
-        model.addAttribute("usuario", usuario);
+        model.addAttribute("usuario", managerUserSession.usuarioSesion());
         return "formNuevaTarea";
     }
 
     @PostMapping("/usuarios/{id}/tareas/nueva")
-    public String nuevaTarea(@PathVariable(value="id") Long idUsuario, @ModelAttribute TareaData tareaData,
+    public Object nuevaTarea(@PathVariable(value="id") Long idUsuario, @ModelAttribute TareaData tareaData,
                              Model model, RedirectAttributes flash,
                              HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            comprobarUsuarioLogeado(idUsuario);
 
-        comprobarUsuarioLogeado(idUsuario);
-
-        Usuario usuario = usuarioService.findById(idUsuario);
-        tareaService.nuevaTareaUsuario(idUsuario, tareaData.getTitulo());
-        flash.addFlashAttribute("mensaje", "Tarea creada correctamente");
-        return "redirect:/usuarios/" + idUsuario + "/tareas";
-     }
+            tareaService.nuevaTareaUsuario(idUsuario, tareaData.getTitulo());
+            flash.addFlashAttribute("mensaje", "Tarea creada correctamente");
+            return "redirect:/usuarios/" + idUsuario + "/tareas";
+        });
+    }
 
-    @GetMapping("/usuarios/{id}/tareas")
-    public String listadoTareas(@PathVariable(value="id") Long idUsuario, Model model, HttpSession session) {
+    // Importación de tareas. El cuerpo de la petición se lee de forma
+    // incremental (sin cargarlo entero en memoria) y las tareas se guardan
+    // en lotes. Devuelve en JSON el número de tareas importadas; si el
+    // fichero tiene un error, el 400 indica también lo ya importado.
+    @PostMapping(value = "/usuarios/{id}/tareas/importar", consumes = {"text/csv", "text/plain"})
+    @ResponseBody
+    public ResultadoImportacion importarTareasCsv(@PathVariable(value="id") Long idUsuario,
+                                                  HttpServletRequest request) throws IOException {
 
         comprobarUsuarioLogeado(idUsuario);
 
-        Usuario usuario = usuarioService.findById(idUsuario);
-        List<Tarea> tareas = tareaService.allTareasUsuario(idUsuario);
-        model.addAttribute("usuario", usuario);
-        model.addAttribute("tareas", tareas);
-        return "listaTareas";
+        boolean csv = request.getContentType().startsWith("text/csv");
+        Charset charset = (request.getCharacterEncoding() != null) ?
+                Charset.forName(request.getCharacterEncoding()) : StandardCharsets.UTF_8;
+        InputStreamReader reader = new InputStreamReader(request.getInputStream(), charset);
+        LectorTitulosTareas titulos = csv ? LectorTitulosTareas.csv(reader) : LectorTitulosTareas.texto(reader);
+        return importarTareas(idUsuario, titulos);
     }
 
-    @GetMapping("/tareas/{id}/editar")
-    public String formEditaTarea(@PathVariable(value="id") Long idTarea, @ModelAttribute TareaData tareaData,
-                                 Model model, HttpSession session) {
-
-        Tarea tarea = tareaService.findById(idTarea);
-        if (tarea == null) {
-            throw new TareaNotFoundException();
-        }
+    @PostMapping(value = "/usuarios/{id}/tareas/importar", consumes = {"application/json", "application/x-ndjson"})
+    @ResponseBody
+    public ResultadoImportacion importarTareasJson(@PathVariable(value="id") Long idUsuario,
+                                                   HttpServletRequest request) throws IOException {
 
-        Usuario usuario = usuarioService.findById(tarea.getUsuario().getId());
-        comprobarUsuarioLogeado(usuario.getId());
+        comprobarUsuarioLogeado(idUsuario);
 
-        model.addAttribute("tarea", tarea);
-        model.addAttribute("usuario", usuario);
-        tareaData.setTitulo(tarea.getTitulo());
-        return "formEditarTarea";
+        LectorTitulosTareas titulos = LectorTitulosTareas.json(request.getInputStream());
+        return importarTareas(idUsuario, titulos);
     }
 
-    @PostMapping("/tareas/{id}/editar")
-    public String grabaTareaModificada(@PathVariable(value="id") Long idTarea, @ModelAttribute TareaData tareaData,
-                                       Model model, RedirectAttributes flash, HttpSession session) {
-        Tarea tarea = tareaService.findById(idTarea);
-        if (tarea == null) {
-            throw new TareaNotFoundException();
+    private ResultadoImportacion importarTareas(Long idUsuario, LectorTitulosTareas titulos) {
+        ResultadoImportacion resultado = new ResultadoImportacion();
+        try {
+            return tareaService.importarTareasUsuario(idUsuario, titulos, TAM_LOTE_IMPORTACION, resultado);
+        } catch (FormatoNoValidoException e) {
+            throw new ImportacionInterrumpidaException(e.getMessage(), resultado);
         }
+    }
+
+    // Respuesta de una importación interrumpida: el error (con la línea
+    // del fichero) y las tareas que ya se han guardado en lotes anteriores
+    @ExceptionHandler(ImportacionInterrumpidaException.class)
+    public ResponseEntity<Map<String, Object>> importacionInterrumpida(ImportacionInterrumpidaException e) {
+        Map<String, Object> respuesta = new LinkedHashMap<>();
+        respuesta.put("error", e.getMessage());
+        respuesta.put("importadas", e.getResultado().getImportadas());
+        respuesta.put("omitidas", e.getResultado().getOmitidas());
+        respuesta.put("lotes", e.getResultado().getLotes());
+        return ResponseEntity.badRequest().body(respuesta);
+    }
 
-        Long idUsuario = tarea.getUsuario().getId();
+    // Exportación de tareas en CSV (por defecto) o NDJSON. Las filas se
+    // escriben directamente en la respuesta a medida que se leen de la
+    // base de datos, sin construir el listado completo en memoria.
+    @GetMapping("/usuarios/{id}/tareas/exportar")
+    public void exportarTareas(@PathVariable(value="id") Long idUsuario,
+                               @RequestParam(value="formato", defaultValue="csv") String formato,
+                               HttpServletResponse response) throws IOException {
 
         comprobarUsuarioLogeado(idUsuario);
 
-        tareaService.modificaTarea(idTarea, tareaData.getTitulo());
-        flash.addFlashAttribute("mensaje", "Tarea modificada correctamente");
-        return "redirect:/usuarios/" + tarea.getUsuario().getId() + "/tareas";
+        boolean ndjson = formato.equals("ndjson");
+        if (!ndjson && !formato.equals("csv"))
+            throw new FormatoNoValidoException("Formato de exportación no soportado: " + formato);
+
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentType(ndjson ? "application/x-ndjson" : "text/csv");
+        response.setHeader("Content-Disposition",
+                "attachment; filename=\"tareas-" + idUsuario + (ndjson ? ".ndjson" : ".csv") + "\"");
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        EscritorTareas escritor = ndjson ? EscritorTareas.ndjson(writer) : EscritorTareas.csv(writer);
+        tareaService.exportarTareasUsuario(idUsuario, escritor);
+        writer.flush();
+    }
+
+    @GetMapping("/usuarios/{id}/tareas")
+    public Object listadoTareas(@PathVariable(value="id") Long idUsuario,
+                                @RequestParam(value="desde", required=false) Long desde,
+                                @RequestParam(value="q", required=false) String q,
+                                Model model, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            comprobarUsuarioLogeado(idUsuario);
+
+            String busqueda = (q == null) ? "" : q.trim();
+            PaginaListado<Tarea> tareas = PaginaListado.leer(TAREAS_POR_PAGINA, tamConsulta -> busqueda.isEmpty()
+                    ? tareaService.tareasUsuarioPaginadas(idUsuario, desde, tamConsulta)
+                    : tareaService.buscarTareasUsuario(idUsuario, busqueda, desde, tamConsulta));
+
+            model.addAttribute("usuario", managerUserSession.usuarioSesion());
+            model.addAttribute("tareas", tareas.getElementos());
+            model.addAttribute("desde", desde);
+            model.addAttribute("siguiente", tareas.siguiente(Tarea::getId));
+            model.addAttribute("q", busqueda);
+            return "listaTareas";
+        });
+    }
+
+    @GetMapping("/tareas/{id}/editar")
+    public Object formEditaTarea(@PathVariable(value="id") Long idTarea, @ModelAttribute TareaData tareaData,
+                                 Model model, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            Tarea tarea = tareaService.findById(idTarea);
+            if (tarea == null) {
+                throw new TareaNotFoundException();
+            }
+
+            comprobarUsuarioLogeado(tarea.getUsuario().getId());
+
+            model.addAttribute("tarea", tarea);
+            model.addAttribute("usuario", managerUserSession.usuarioSesion());
+            tareaData.setTitulo(tarea.getTitulo());
+            tareaData.setVersion(tarea.getVersion());
+            return "formEditarTarea";
+        });
+    }
+
+    @PostMapping("/tareas/{id}/editar")
+    public Object grabaTareaModificada(@PathVariable(value="id") Long idTarea, @ModelAttribute TareaData tareaData,
+                                       Model model, RedirectAttributes flash, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            Tarea tarea = tareaService.findById(idTarea);
+            if (tarea == null) {
+                throw new TareaNotFoundException();
+            }
+
+            Long idUsuario = tarea.getUsuario().getId();
+
+            comprobarUsuarioLogeado(idUsuario);
+
+            // Sin la versión del formulario no se puede detectar si otro
+            // usuario ha modificado la tarea: se rechaza con un 400. Si la
+            // ha modificado desde que se mostró el formulario se responde
+            // con un 409 en lugar de sobrescribirla
+            if (tareaData.getVersion() == null)
+                throw new VersionRequeridaException();
+            try {
+                tareaService.modificaTarea(idTarea, tareaData.getTitulo(), tareaData.getVersion());
+            } catch (ConflictoVersionException e) {
+                throw new ConflictoEdicionException();
+            }
+            flash.addFlashAttribute("mensaje", "Tarea modificada correctamente");
+            return "redirect:/usuarios/" + tarea.getUsuario().getId() + "/tareas";
+        });
     }
 
     @DeleteMapping("/tareas/{id}")
     @ResponseBody
     // La anotación @ResponseBody sirve para que la cadena devuelta sea la resupuesta
     // de la petición HTTP, en lugar de una plantilla thymeleaf
-    public String borrarTarea(@PathVariable(value="id") Long idTarea, RedirectAttributes flash, HttpSession session) {
-        Tarea tarea = tareaService.findById(idTarea);
-        if (tarea == null) {
-            throw new TareaNotFoundException();
-        }
-
-        comprobarUsuarioLogeado(tarea.getUsuario().getId());
-
-        tareaService.borraTarea(idTarea);
-        return "";
+    public Object borrarTarea(@PathVariable(value="id") Long idTarea, RedirectAttributes flash, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
+            Tarea tarea = tareaService.findById(idTarea);
+            if (tarea == null) {
+                throw new TareaNotFoundException();
+            }
+
+            comprobarUsuarioLogeado(tarea.getUsuario().getId());
+
+            tareaService.borraTarea(idTarea);
+            return "";
+        });
     }
 }
 
@@ -2,6 +2,8 @@ package madstodolist.controller;
 
 public class TareaData {
     private String titulo;
+    // Versión leída al mostrar el formulario (bloqueo optimista)
+    private Long version;
 
     public String getTitulo() {
         return titulo;
@@ -10,4 +12,12 @@ public class TareaData {
     public void setTitulo(String titulo) {
         this.titulo = titulo;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
@@ -3,59 +3,83 @@ package madstodolist.controller;
 import javax.servlet.http.HttpSession;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import madstodolist.authentication.ManagerUserSession;
 import madstodolist.controller.exception.UsuarioNoLogeadoException;
 import madstodolist.model.Usuario;
+import madstodolist.model.UsuarioResumen;
 import madstodolist.service.UsuarioService;
 
 @Controller
 public class UsuarioController {
 
+    // Número de usuarios por página en el listado de usuarios registrados
+    static final int USUARIOS_POR_PAGINA = 25;
+
     @Autowired
     UsuarioService usuarioService;
 
     @Autowired
     ManagerUserSession managerUserSession;
 
+    @Autowired
+    EjecutorPeticiones ejecutorPeticiones;
+
     private void comprobarUsuarioAdminYLogeado(Long idUsuario) {
         Long idUsuarioLogeado = managerUserSession.usuarioLogeado();
-        Usuario admin = usuarioService.findAdmin(); 
+        Long idAdmin = usuarioService.findAdminId();
 
-        if (admin == null || idUsuarioLogeado == null || admin.getId() != idUsuarioLogeado) 
+        if (idAdmin == null || idUsuarioLogeado == null || !idAdmin.equals(idUsuarioLogeado))
             throw new UsuarioNoLogeadoException();
-        
     }
 
     @GetMapping("/registrados")
-    public String listadoUsuarios(Model model, HttpSession session) {
+    public Object listadoUsuarios(@RequestParam(value="q", required=false) String q,
+                                  @RequestParam(value="orden", defaultValue="email") String orden,
+                                  @RequestParam(value="dir", defaultValue="asc") String dir,
+                                  @RequestParam(value="pagina", defaultValue="0") int pagina,
+                                  Model model, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
         
-        comprobarUsuarioAdminYLogeado(managerUserSession.usuarioLogeado());
+            comprobarUsuarioAdminYLogeado(managerUserSession.usuarioLogeado());
+
+            // Los parámetros no válidos se sustituyen por los valores por defecto
+            String prefijo = (q == null) ? "" : q.trim();
+            String campoOrden = UsuarioService.CAMPOS_ORDEN_DIRECTORIO.contains(orden) ? orden : "email";
+            boolean descendente = dir.equals("desc");
+            Page<UsuarioResumen> usuarios = usuarioService.directorioUsuarios(prefijo, campoOrden, descendente,
+                    Math.max(pagina, 0), USUARIOS_POR_PAGINA);
 
-        Usuario admin = usuarioService.findAdmin();
-        model.addAttribute("usuario", admin); 
-        model.addAttribute("usuarios", usuarioService.allUsuarios());
-        return "listaUsuarios";
+            model.addAttribute("usuario", managerUserSession.usuarioSesion());
+            model.addAttribute("usuarios", usuarios);
+            model.addAttribute("q", prefijo);
+            model.addAttribute("orden", campoOrden);
+            model.addAttribute("dir", descendente ? "desc" : "asc");
+            return "listaUsuarios";
+        });
     }
 
     @GetMapping("/registrados/{id}")
-    public String detallesUsuario(@PathVariable(value = "id") Long idUsiario,Model model, HttpSession session) {
+    public Object detallesUsuario(@PathVariable(value = "id") Long idUsiario,Model model, HttpSession session) {
+        return ejecutorPeticiones.ejecutar(() -> {
         
-        comprobarUsuarioAdminYLogeado(managerUserSession.usuarioLogeado());
+            comprobarUsuarioAdminYLogeado(managerUserSession.usuarioLogeado());
 
-        // Usuario del que se mostrarán los detalles   
-        Usuario usuario = usuarioService.findById(idUsiario);
-        model.addAttribute("user", usuario);
+            // Usuario del que se mostrarán los detalles   
+            Usuario usuario = usuarioService.findById(idUsiario);
+            model.addAttribute("user", usuario);
 
-        // Usuario administrador
-        Usuario admin = usuarioService.findAdmin();
-        model.addAttribute("usuario", admin);
+            // Usuario administrador (logeado)
+            model.addAttribute("usuario", managerUserSession.usuarioSesion());
         
-        return "detalleUsuario";
+            return "detalleUsuario";
+        });
     }
     
 }
@@ -0,0 +1,8 @@
+package madstodolist.controller.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.CONFLICT, reason="Modificado por otro usuario, vuelve a cargar la página")
+public class ConflictoEdicionException extends RuntimeException {
+}
@@ -0,0 +1,11 @@
+package madstodolist.controller.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason="Formato de fichero no válido")
+public class FormatoNoValidoException extends RuntimeException {
+    public FormatoNoValidoException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+package madstodolist.controller.exception;
+
+import madstodolist.service.ResultadoImportacion;
+
+// Error de formato a mitad de una importación. Los lotes anteriores al
+// error ya están guardados; el resultado indica cuántos.
+public class ImportacionInterrumpidaException extends RuntimeException {
+    private final ResultadoImportacion resultado;
+
+    public ImportacionInterrumpidaException(String message, ResultadoImportacion resultado) {
+        super(message);
+        this.resultado = resultado;
+    }
+
+    public ResultadoImportacion getResultado() {
+        return resultado;
+    }
+}
@@ -0,0 +1,8 @@
+package madstodolist.controller.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason="Falta la versión del formulario, vuelve a cargar la página")
+public class VersionRequeridaException extends RuntimeException {
+}
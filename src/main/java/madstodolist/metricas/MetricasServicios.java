@@ -0,0 +1,43 @@
+package madstodolist.metricas;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// Mide cada llamada a un método público de los servicios de
+// madstodolist.service con un Timer 'madstodolist.service', etiquetado con
+// la clase, el método y la excepción lanzada (o "none"). El contador del
+// Timer da el número de llamadas. Las consultas de los repositorios las
+// mide Spring Boot en 'spring.data.repository.invocations'.
+@Aspect
+@Component
+public class MetricasServicios {
+
+    static final String METRICA = "madstodolist.service";
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Around("@within(org.springframework.stereotype.Service) && execution(public * madstodolist.service..*(..))")
+    public Object medir(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample muestra = Timer.start(meterRegistry);
+        String excepcion = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable t) {
+            excepcion = t.getClass().getSimpleName();
+            throw t;
+        } finally {
+            muestra.stop(Timer.builder(METRICA)
+                    .description("Llamadas a los métodos de los servicios")
+                    .tag("class", joinPoint.getSignature().getDeclaringType().getSimpleName())
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", excepcion)
+                    .register(meterRegistry));
+        }
+    }
+}
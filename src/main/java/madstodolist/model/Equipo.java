@@ -1,5 +1,9 @@
 package madstodolist.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.OptimisticLock;
+
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.io.Serializable;
@@ -8,17 +12,27 @@ import java.util.Objects;
 import java.util.Set;
 
 @Entity
-@Table(name = "equipos")
+// Caché de segundo nivel (región configurada en application.conf)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "equipos")
+// Índice por (nombre, id) para el listado de equipos paginado por nombre
+@Table(name = "equipos", indexes = @Index(name = "idx_equipos_nombre", columnList = "nombre, id"))
 public class Equipo implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "equipos_seq")
+    @SequenceGenerator(name = "equipos_seq", sequenceName = "equipos_seq", allocationSize = 50)
     private Long id;
     @NotNull
     private String nombre;
 
+    // Bloqueo optimista (ver ReintentosConflicto)
+    @Version
+    @Column(columnDefinition = "bigint default 0 not null")
+    private Long version;
+
     // Declaramos el tipo de recuperación como LAZY.
     // No haría falta porque es el tipo por defecto en una
     // relación a muchos.
@@ -28,9 +42,20 @@ public class Equipo implements Serializable {
     // BD que devuelve todos los usuarios del equipo y rellena el
     // atributo.
     @ManyToMany(fetch = FetchType.LAZY)
+    // La clave primaria de la tabla es (fk_equipo, fk_usuario), que sirve
+    // para buscar por equipo. Añadimos un índice para buscar por usuario.
     @JoinTable(name = "equipo_usuario",
             joinColumns = { @JoinColumn(name = "fk_equipo") },
-            inverseJoinColumns = { @JoinColumn(name = "fk_usuario")})
+            inverseJoinColumns = { @JoinColumn(name = "fk_usuario")},
+            indexes = @Index(name = "idx_equipo_usuario_usuario", columnList = "fk_usuario"))
+    // Los cambios de miembros no cambian la versión del equipo: no
+    // entran en conflicto con la modificación de su nombre
+    @OptimisticLock(excluded = true)
+    // La colección no se guarda en la caché de segundo nivel: los miembros
+    // se añaden y eliminan con SQL nativo sobre equipo_usuario (ver
+    // EquipoRepository), que no actualiza las colecciones cacheadas, y las
+    // vistas usan consultas (findIdsByUsuarioId, findResumenes) en lugar
+    // de recorrer la colección.
     Set<Usuario> usuarios = new HashSet<>();
 
     public Equipo() {}
@@ -51,6 +76,10 @@ public class Equipo implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public Set<Usuario> getUsuarios() {
         return usuarios;
     }
@@ -1,9 +1,82 @@
 package madstodolist.model;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.Set;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_NATIVE_SPACES;
 
 public interface EquipoRepository extends CrudRepository<Equipo, Long> {
     public List<Equipo> findAll();
+
+    // El resultado se guarda en la caché de consultas de Hibernate y se
+    // invalida automáticamente al modificar la tabla de equipos. Sólo lo
+    // usa EquipoService.findAllOrderedByName; el listado web de equipos
+    // está paginado (EquipoService.listadoEquiposUsuario).
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     public List<Equipo> findAllByOrderByNombreAsc();
-}
\ No newline at end of file
+
+    // Ids de los equipos de los que es miembro el usuario, consultando
+    // sólo la tabla equipo_usuario (sin cargar equipos ni usuarios)
+    @Query("select e.id from Equipo e join e.usuarios u where u.id = :usuarioId")
+    public Set<Long> findIdsByUsuarioId(@Param("usuarioId") Long usuarioId);
+
+    // Páginas del listado de equipos ordenadas por (nombre, id) con el número
+    // de miembros de cada equipo. La primera página no tiene posición de
+    // partida; las siguientes empiezan después del último equipo devuelto.
+    @Query("select e.id as id, e.nombre as nombre, count(u.id) as numMiembros " +
+           "from Equipo e left join e.usuarios u " +
+           "group by e.id, e.nombre order by e.nombre, e.id")
+    public List<EquipoResumen> findResumenes(Pageable pageable);
+
+    @Query("select e.id as id, e.nombre as nombre, count(u.id) as numMiembros " +
+           "from Equipo e left join e.usuarios u " +
+           "where e.nombre > :nombre or (e.nombre = :nombre and e.id > :id) " +
+           "group by e.id, e.nombre order by e.nombre, e.id")
+    public List<EquipoResumen> findResumenesDespuesDe(@Param("nombre") String nombre, @Param("id") Long id,
+                                                      Pageable pageable);
+
+    // Altas y bajas de miembros directamente sobre la tabla equipo_usuario,
+    // sin cargar las colecciones del equipo ni del usuario. La clave primaria
+    // (fk_equipo, fk_usuario) impide que un usuario se añada dos veces.
+    // HINT_NATIVE_SPACES indica a Hibernate qué tabla modifican las
+    // sentencias SQL nativas, para que sólo invalide en la caché de
+    // segundo nivel lo que depende de equipo_usuario y no todas las regiones.
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "equipo_usuario"))
+    @Query(value = "insert into equipo_usuario (fk_equipo, fk_usuario) values (:equipoId, :usuarioId)",
+           nativeQuery = true)
+    public int insertarMiembro(@Param("equipoId") Long equipoId, @Param("usuarioId") Long usuarioId);
+
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "equipo_usuario"))
+    @Query(value = "delete from equipo_usuario where fk_equipo = :equipoId and fk_usuario = :usuarioId",
+           nativeQuery = true)
+    public int eliminarMiembro(@Param("equipoId") Long equipoId, @Param("usuarioId") Long usuarioId);
+
+    // Elimina todos los miembros del equipo (el equipo se conserva)
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "equipo_usuario"))
+    @Query(value = "delete from equipo_usuario where fk_equipo = :equipoId", nativeQuery = true)
+    public int eliminarMiembros(@Param("equipoId") Long equipoId);
+
+    // Borrado de un equipo sin cargar sus miembros. Al ser un borrado en
+    // bloque de una entidad con @ManyToMany, Hibernate elimina antes sus
+    // filas de equipo_usuario.
+    @Modifying
+    @Transactional
+    @Query("delete from Equipo e where e.id = :equipoId")
+    public int eliminarEquipo(@Param("equipoId") Long equipoId);
+}
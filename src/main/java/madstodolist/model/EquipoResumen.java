@@ -0,0 +1,10 @@
+package madstodolist.model;
+
+// Proyección con los datos del equipo que se muestran en el listado
+// de equipos. El número de miembros se calcula en la propia consulta
+// sin cargar la colección de usuarios.
+public interface EquipoResumen {
+    Long getId();
+    String getNombre();
+    Long getNumMiembros();
+}
@@ -0,0 +1,9 @@
+package madstodolist.model;
+
+// Proyección con los datos de un miembro que se muestran en el
+// listado de miembros de un equipo
+public interface MiembroEquipo {
+    Long getId();
+    String getNombre();
+    String getEmail();
+}
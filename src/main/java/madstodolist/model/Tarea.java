@@ -1,18 +1,33 @@
 package madstodolist.model;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.io.Serializable;
 import java.util.Objects;
 
 @Entity
-@Table(name = "tareas")
+// Caché de segundo nivel (región configurada en application.conf)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tareas")
+// Índice para recuperar las tareas de un usuario ordenadas por id
+// (listado paginado, exportación) sin recorrer toda la tabla
+@Table(name = "tareas",
+        indexes = @Index(name = "idx_tareas_usuario_id", columnList = "usuario_id, id"))
 public class Tarea implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    // Usamos una secuencia en lugar de IDENTITY para que Hibernate
+    // pueda agrupar las inserciones en lotes JDBC. Con el optimizador
+    // pooled-lo (ver application.properties) se reserva un bloque de
+    // 'allocationSize' ids con cada consulta a la secuencia.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tareas_seq")
+    @SequenceGenerator(name = "tareas_seq", sequenceName = "tareas_seq", allocationSize = 50)
     private Long id;
     @NotNull
     private String titulo;
@@ -25,17 +40,25 @@ public class Tarea implements Serializable {
     @JoinColumn(name = "usuario_id")
     private Usuario usuario;
 
+    // Bloqueo optimista (ver ReintentosConflicto)
+    @Version
+    @Column(columnDefinition = "bigint default 0 not null")
+    private Long version;
+
     // Constructor vacío necesario para JPA/Hibernate.
     // No debe usarse desde la aplicación.
     public Tarea() {}
 
     // Al crear una tarea la asociamos automáticamente a un
-    // usuario. Actualizamos por tanto la lista de tareas del
-    // usuario.
+    // usuario. Actualizamos la lista de tareas del usuario sólo si ya
+    // está cargada: la colección es LAZY y añadir a ella la cargaría
+    // entera (una consulta con todas las tareas del usuario). Si el
+    // usuario es una referencia sin cargar tampoco se accede a ella.
     public Tarea(Usuario usuario, String titulo) {
         this.usuario = usuario;
         this.titulo = titulo;
-        usuario.getTareas().add(this);
+        if (Hibernate.isInitialized(usuario) && Hibernate.isInitialized(usuario.getTareas()))
+            usuario.getTareas().add(this);
     }
 
     public Long getId() {
@@ -46,6 +69,10 @@ public class Tarea implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public String getTitulo() {
         return titulo;
     }
@@ -1,6 +1,45 @@
 package madstodolist.model;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 public interface TareaRepository extends CrudRepository<Tarea, Long> {
+    // Paginación por clave (keyset): devuelve las tareas del usuario con
+    // id mayor que 'id', ordenadas por id. El tamaño de la página se
+    // indica con el Pageable, de forma que la consulta sólo recorre
+    // las filas de la página pedida.
+    List<Tarea> findByUsuarioIdAndIdGreaterThanOrderByIdAsc(Long usuarioId, Long id, Pageable pageable);
+
+    // Búsqueda de tareas del usuario cuyo título contiene el patrón (ya en
+    // minúsculas y con los comodines escapados), paginada por id igual que
+    // el listado. En PostgreSQL la condición sobre lower(titulo) usa el
+    // índice de trigramas de schema-postgres.sql; en H2 se recorren sólo
+    // las tareas del usuario a través de idx_tareas_usuario_id.
+    @Query("select t from Tarea t where t.usuario.id = :usuarioId and t.id > :despuesDeId " +
+           "and lower(t.titulo) like :patron escape '\\' order by t.id")
+    List<Tarea> buscarPorTitulo(@Param("usuarioId") Long usuarioId, @Param("patron") String patron,
+                                @Param("despuesDeId") Long despuesDeId, Pageable pageable);
+
+    // Recorre todas las tareas del usuario con un cursor de base de datos.
+    // El driver trae las filas en bloques de HINT_FETCH_SIZE en lugar de
+    // cargar el resultado completo. Debe usarse dentro de una transacción
+    // y cerrar el Stream al terminar. Las tareas recorridas no se guardan
+    // en la caché de segundo nivel (CacheMode.IGNORE): una exportación
+    // desplazaría de la región de tareas las que sí se están usando.
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+                 @QueryHint(name = HINT_READONLY, value = "true"),
+                 @QueryHint(name = HINT_CACHE_MODE, value = "IGNORE")})
+    @Query("select t from Tarea t where t.usuario.id = :usuarioId order by t.id")
+    Stream<Tarea> streamByUsuarioId(@Param("usuarioId") Long usuarioId);
 }
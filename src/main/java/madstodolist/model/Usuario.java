@@ -1,5 +1,8 @@
 package madstodolist.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.io.Serializable;
@@ -9,13 +12,27 @@ import java.util.Objects;
 import java.util.Set;
 
 @Entity
-@Table(name = "usuarios")
+// Caché de segundo nivel: los usuarios se leen mucho más de lo que
+// se modifican (región configurada en application.conf)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "usuarios")
+// La restricción de unicidad crea también el índice sobre el email,
+// que se usa en cada login y registro. El índice sobre el nombre sirve
+// para la búsqueda por prefijo y la ordenación del listado de usuarios.
+@Table(name = "usuarios",
+        uniqueConstraints = @UniqueConstraint(name = "uk_usuarios_email", columnNames = "email"),
+        indexes = @Index(name = "idx_usuarios_nombre", columnList = "nombre"))
+// Planes de recuperación para los pocos casos en los que se necesitan
+// las colecciones del usuario. Se usan desde UsuarioRepository.
+@NamedEntityGraph(name = "Usuario.tareas", attributeNodes = @NamedAttributeNode("tareas"))
+@NamedEntityGraph(name = "Usuario.equipos", attributeNodes = @NamedAttributeNode("equipos"))
 public class Usuario implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "usuarios_seq")
+    @SequenceGenerator(name = "usuarios_seq", sequenceName = "usuarios_seq", allocationSize = 50)
     private Long id;
     @NotNull
     private String email;
@@ -26,15 +43,22 @@ public class Usuario implements Serializable {
     private Date fechaNacimiento;
     private Boolean isAdmin;
 
-    // Definimos el tipo de fetch como EAGER para que
-    // cualquier consulta que devuelve un usuario rellene automáticamente
-    // toda su lista de tareas
-    // CUIDADO!! No es recomendable hacerlo en aquellos casos en los
-    // que la relación pueda traer a memoria una gran cantidad de entidades
-    @OneToMany(mappedBy = "usuario", fetch = FetchType.EAGER)
+    // Definimos el tipo de fetch como LAZY para que recuperar un
+    // usuario (por ejemplo, para mostrar su nombre en la barra de
+    // navegación) sea una única lectura por clave primaria.
+    // Cuando se necesitan las tareas o los equipos se usan los
+    // métodos de UsuarioRepository con los grafos "Usuario.tareas"
+    // y "Usuario.equipos", o se accede a la colección dentro de
+    // una transacción.
+    // Ninguna de las dos colecciones se guarda en la caché de segundo
+    // nivel: son el lado inverso de sus relaciones y Hibernate no las
+    // invalida al crear una tarea (que no añade a la colección si no está
+    // cargada) ni al cambiar los miembros de un equipo con SQL nativo, por
+    // lo que la caché devolvería listas antiguas.
+    @OneToMany(mappedBy = "usuario", fetch = FetchType.LAZY)
     Set<Tarea> tareas = new HashSet<>();
 
-    @ManyToMany(mappedBy = "usuarios", fetch = FetchType.EAGER)
+    @ManyToMany(mappedBy = "usuarios", fetch = FetchType.LAZY)
     Set<Equipo> equipos = new HashSet<>();
 
     // Constructor vacío necesario para JPA/Hibernate.
@@ -0,0 +1,11 @@
+package madstodolist.model;
+
+// Proyección con los datos del usuario necesarios para hacer login.
+// Spring Data sólo selecciona estas columnas y no carga ninguna
+// colección del usuario.
+public interface UsuarioLogin {
+    Long getId();
+    String getNombre();
+    String getPassword();
+    Boolean getIsAdmin();
+}
@@ -1,10 +1,52 @@
 package madstodolist.model;
 
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
-public interface UsuarioRepository extends CrudRepository<Usuario, Long> {
+public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     Optional<Usuario> findByEmail(String s);
+    Optional<UsuarioLogin> findLoginByEmail(String email);
     Iterable<Usuario> findByIsAdminTrue();
+    boolean existsByIsAdminTrue();
+    Optional<Usuario> findFirstByIsAdminTrue();
+
+    // Páginas del listado de usuarios registrados, opcionalmente filtradas
+    // por prefijo del email o del nombre (ambos indexados)
+    Page<UsuarioResumen> findResumenBy(Pageable pageable);
+    Page<UsuarioResumen> findResumenByEmailStartingWithOrNombreStartingWith(String email, String nombre,
+                                                                            Pageable pageable);
+
+    // Recuperan el usuario junto con la colección indicada en
+    // una única consulta (LEFT JOIN FETCH)
+    @EntityGraph(value = "Usuario.tareas")
+    Optional<Usuario> findConTareasById(Long id);
+
+    @EntityGraph(value = "Usuario.equipos")
+    Optional<Usuario> findConEquiposById(Long id);
+
+    // Miembros del equipo con id mayor que 'despuesDeId', ordenados por id,
+    // recorriendo la tabla equipo_usuario por su clave primaria
+    @Query("select u.id as id, u.nombre as nombre, u.email as email " +
+           "from Equipo e join e.usuarios u " +
+           "where e.id = :equipoId and u.id > :despuesDeId order by u.id")
+    List<MiembroEquipo> findMiembrosEquipo(@Param("equipoId") Long equipoId, @Param("despuesDeId") Long despuesDeId,
+                                           Pageable pageable);
+
+    @Query("select count(u.id) from Equipo e join e.usuarios u where e.id = :equipoId")
+    long countMiembrosEquipo(@Param("equipoId") Long equipoId);
+
+    // Actualiza sólo el hash de la contraseña, sin cargar el usuario
+    @Modifying
+    @Transactional
+    @Query("update Usuario u set u.password = :password where u.id = :id")
+    int actualizarPassword(@Param("id") Long id, @Param("password") String password);
 }
@@ -0,0 +1,9 @@
+package madstodolist.model;
+
+// Proyección con los datos del usuario que se muestran en el listado
+// de usuarios registrados. No carga tareas ni equipos.
+public interface UsuarioResumen {
+    Long getId();
+    String getEmail();
+    String getNombre();
+}
@@ -0,0 +1,59 @@
+package madstodolist.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Consulta y vaciado de la caché de segundo nivel de Hibernate
+@Service
+public class CacheService {
+
+    Logger logger = LoggerFactory.getLogger(CacheService.class);
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    // Estadísticas de cada región de la caché (entidades y consultas),
+    // ordenadas por nombre de región
+    public List<EstadisticasRegion> estadisticasRegiones() {
+        Statistics statistics = sessionFactory().getStatistics();
+        // La región de resultados de consultas no aparece entre las regiones
+        // de segundo nivel y sus estadísticas se consultan aparte
+        Set<String> regiones = new TreeSet<>(Arrays.asList(statistics.getSecondLevelCacheRegionNames()));
+        regiones.add(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME);
+
+        List<EstadisticasRegion> estadisticas = new ArrayList<>(regiones.size());
+        for (String region : regiones) {
+            CacheRegionStatistics stats = region.equals(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME)
+                    ? statistics.getQueryRegionStatistics(region)
+                    : statistics.getCacheRegionStatistics(region);
+            if (stats != null)
+                estadisticas.add(new EstadisticasRegion(region, stats.getHitCount(), stats.getMissCount(),
+                        stats.getPutCount(), stats.getElementCountInMemory()));
+        }
+        return estadisticas;
+    }
+
+    // Vacía todas las regiones. Necesario cuando se modifican las tablas
+    // sin pasar por Hibernate (scripts SQL).
+    public void vaciar() {
+        logger.debug("Vaciando la caché de segundo nivel");
+        sessionFactory().getCache().evictAllRegions();
+    }
+
+    private SessionFactory sessionFactory() {
+        return entityManagerFactory.unwrap(SessionFactory.class);
+    }
+}
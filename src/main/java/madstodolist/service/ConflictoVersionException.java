@@ -0,0 +1,10 @@
+package madstodolist.service;
+
+// Se lanza al modificar una tarea o un equipo que otro usuario ha
+// modificado desde que se leyó (su versión ya no es la esperada) o que
+// no se ha podido modificar por demasiadas modificaciones simultáneas
+public class ConflictoVersionException extends RuntimeException {
+    public ConflictoVersionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,34 @@
+package madstodolist.service;
+
+// Fila del listado de equipos: datos del equipo, número de miembros y si
+// el usuario logeado es miembro, calculado en el servicio para que la vista
+// no tenga que recorrer los equipos del usuario en cada fila.
+public class EquipoListado {
+    private final Long id;
+    private final String nombre;
+    private final long numMiembros;
+    private final boolean miembro;
+
+    public EquipoListado(Long id, String nombre, long numMiembros, boolean miembro) {
+        this.id = id;
+        this.nombre = nombre;
+        this.numMiembros = numMiembros;
+        this.miembro = miembro;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public long getNumMiembros() {
+        return numMiembros;
+    }
+
+    public boolean isMiembro() {
+        return miembro;
+    }
+}
@@ -2,16 +2,24 @@ package madstodolist.service;
 
 import madstodolist.model.Equipo;
 import madstodolist.model.EquipoRepository;
+import madstodolist.model.EquipoResumen;
+import madstodolist.model.MiembroEquipo;
 import madstodolist.model.Usuario;
 import madstodolist.model.UsuarioRepository;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
+import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
@@ -22,13 +30,15 @@ public class EquipoService {
     EquipoRepository equipoRepository;
     @Autowired
     UsuarioRepository usuarioRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
 
     @Transactional
     public Equipo crearEquipo(String nombre) {
         if (nombre.equals(""))
             throw new EquipoServiceException("El nombre del equipo no puede estar vacío");
 
-        logger.debug("Creando equipo " + nombre);
+        logger.debug("Creando equipo {}", nombre);
         Equipo equipo = new Equipo(nombre);
         equipoRepository.save(equipo);
         return equipo;
@@ -36,7 +46,7 @@ public class EquipoService {
 
     @Transactional(readOnly = true)
     public Equipo recuperarEquipo(Long id) {
-        logger.debug("Devolviendo el equipo con id: " + id);
+        logger.debug("Devolviendo el equipo con id: {}", id);
         Equipo equipoBD = equipoRepository.findById(id).orElse(null);
 
         if (equipoBD == null)
@@ -45,47 +55,97 @@ public class EquipoService {
         return equipoBD;
     }
 
+    // Listado completo de equipos. Ningún controlador lo usa ya (la lista
+    // de equipos se pagina con listadoEquiposUsuario); se mantiene como
+    // parte de la API del servicio.
     @Transactional(readOnly = true)
     public List<Equipo> findAllOrderedByName() {
         logger.debug("Devolviendo el listado de equipos");
         return equipoRepository.findAllByOrderByNombreAsc();
     }
 
+    // Página del listado de equipos ordenado por nombre (y por id para
+    // deshacer empates) con el número de miembros de cada equipo e
+    // indicando si el usuario es miembro. La página empieza después del
+    // equipo (despuesDeNombre, despuesDeId); si son null devuelve la primera.
+    // La pertenencia se obtiene con una única consulta y se comprueba en
+    // tiempo constante por equipo.
+    @Transactional(readOnly = true)
+    public List<EquipoListado> listadoEquiposUsuario(Long usuario_id, String despuesDeNombre, Long despuesDeId,
+                                                     int tamPagina) {
+        if (logger.isDebugEnabled())
+            logger.debug("Devolviendo el listado de equipos para el usuario {} a partir de {} ({})",
+                    usuario_id, despuesDeNombre, despuesDeId);
+        if (tamPagina < 1)
+            throw new EquipoServiceException("El tamaño de página debe ser positivo");
+
+        Pageable pagina = PageRequest.of(0, tamPagina);
+        List<EquipoResumen> equipos = (despuesDeNombre == null || despuesDeId == null)
+                ? equipoRepository.findResumenes(pagina)
+                : equipoRepository.findResumenesDespuesDe(despuesDeNombre, despuesDeId, pagina);
+        Set<Long> equiposUsuario = equipoRepository.findIdsByUsuarioId(usuario_id);
+
+        List<EquipoListado> listado = new ArrayList<>(equipos.size());
+        for (EquipoResumen equipo : equipos) {
+            listado.add(new EquipoListado(equipo.getId(), equipo.getNombre(), equipo.getNumMiembros(),
+                    equiposUsuario.contains(equipo.getId())));
+        }
+        return listado;
+    }
+
+    @Transactional(readOnly = true)
+    public long numeroEquipos() {
+        return equipoRepository.count();
+    }
+
+    // El alta y la baja de miembros trabajan directamente sobre la tabla
+    // equipo_usuario: el equipo y el usuario se comprueban por clave
+    // primaria y su coste no depende del número de miembros del equipo.
     @Transactional
     public void addUsuarioEquipo(Long usuario_id, Long equipo_id) {
-        logger.debug("Añadiendo el usuario " + usuario_id + " al equipo " + equipo_id);
-        Equipo equipo = equipoRepository.findById(equipo_id).orElse(null);
-        Usuario usuario = usuarioRepository.findById(usuario_id).orElse(null);
-
-        if (equipo == null || usuario == null)
+        logger.debug("Añadiendo el usuario {} al equipo {}", usuario_id, equipo_id);
+        if (!equipoRepository.existsById(equipo_id) || !usuarioRepository.existsById(usuario_id))
             throw new EquipoServiceException("No existe el equipo o el usuario");
 
-        if (equipo.getUsuarios().contains(usuario))
+        // Si el usuario ya es miembro la inserción viola la clave primaria
+        try {
+            equipoRepository.insertarMiembro(equipo_id, usuario_id);
+        } catch (DataIntegrityViolationException e) {
+            // Cualquier otra violación (por ejemplo la clave ajena si el
+            // equipo se acaba de borrar) no significa que ya sea miembro
+            if (!violaClavePrimariaMiembros(e))
+                throw e;
             throw new EquipoServiceException("El usuario ya es miembro del equipo");
+        }
+    }
 
-        equipo.addUsuario(usuario);
-        equipoRepository.save(equipo);
+    // Indica si la excepción se debe a la clave primaria de equipo_usuario.
+    // La genera Hibernate sin nombre fijo: en PostgreSQL es
+    // equipo_usuario_pkey y en H2 "PRIMARY_KEY_n ON PUBLIC.EQUIPO_USUARIO(...)".
+    private static boolean violaClavePrimariaMiembros(DataIntegrityViolationException e) {
+        if (!(e.getCause() instanceof ConstraintViolationException))
+            return false;
+        String restriccion = ((ConstraintViolationException) e.getCause()).getConstraintName();
+        if (restriccion == null)
+            return false;
+        restriccion = restriccion.toLowerCase();
+        return restriccion.contains("equipo_usuario_pkey")
+                || (restriccion.contains("primary_key") && restriccion.contains("equipo_usuario"));
     }
 
     @Transactional
     public void removeUsuarioEquipo(Long usuario_id, Long equipo_id) {
-        logger.debug("Eliminando el usuario " + usuario_id + " del equipo " + equipo_id);
-        Equipo equipo = equipoRepository.findById(equipo_id).orElse(null);
-        Usuario usuario = usuarioRepository.findById(usuario_id).orElse(null);
-
-        if (equipo == null || usuario == null)
+        logger.debug("Eliminando el usuario {} del equipo {}", usuario_id, equipo_id);
+        if (!equipoRepository.existsById(equipo_id) || !usuarioRepository.existsById(usuario_id))
             throw new EquipoServiceException("No existe el equipo o el usuario");
 
-        if (!equipo.getUsuarios().contains(usuario))
+        if (equipoRepository.eliminarMiembro(equipo_id, usuario_id) == 0)
             throw new EquipoServiceException("El usuario no es miembro del equipo");
-
-        equipo.removeUsuario(usuario);
-        equipoRepository.save(equipo);
     }
 
     @Transactional(readOnly = true)
     public List<Usuario> usuariosEquipo(Long equipo_id) {
-        logger.debug("Devolviendo el listado de usuarios del equipo " + equipo_id);
+        logger.debug("Devolviendo el listado de usuarios del equipo {}", equipo_id);
         Equipo equipo = equipoRepository.findById(equipo_id).orElse(null);
 
         if (equipo == null)
@@ -95,34 +155,55 @@ public class EquipoService {
         return usuarios;
     }
 
-    @Transactional
-    public Equipo modificaNombreEquipo(Long equipo_id, String nuevo_nombre) {
-        logger.debug("Cambiando el nombre del equipo: " + equipo_id + " a " + nuevo_nombre);
+    // Devuelve el equipo junto con como máximo 'tamPagina' de sus miembros
+    // con id mayor que 'despuesDeId' (desde el principio si es null),
+    // ordenados por id. El coste no depende del tamaño del equipo.
+    @Transactional(readOnly = true)
+    public PaginaMiembrosEquipo miembrosEquipoPaginados(Long equipo_id, Long despuesDeId, int tamPagina) {
+        if (logger.isDebugEnabled())
+            logger.debug("Devolviendo {} usuarios del equipo {} a partir del usuario {}", tamPagina, equipo_id, despuesDeId);
+        if (tamPagina < 1)
+            throw new EquipoServiceException("El tamaño de página debe ser positivo");
+
         Equipo equipo = equipoRepository.findById(equipo_id).orElse(null);
 
         if (equipo == null)
             throw new EquipoServiceException("No existe el equipo");
 
-        equipo.setNombre(nuevo_nombre);
-        equipoRepository.save(equipo);
-        return equipo;
+        Long desde = (despuesDeId == null) ? 0L : despuesDeId;
+        List<MiembroEquipo> miembros = usuarioRepository.findMiembrosEquipo(equipo_id, desde, PageRequest.of(0, tamPagina));
+        return new PaginaMiembrosEquipo(equipo, miembros, usuarioRepository.countMiembrosEquipo(equipo_id));
+    }
+
+    public Equipo modificaNombreEquipo(Long equipo_id, String nuevo_nombre) {
+        return modificaNombreEquipo(equipo_id, nuevo_nombre, null);
+    }
+
+    // Igual que TareaService.modificaTarea: con 'versionEsperada' lanza
+    // ConflictoVersionException si otro usuario ha modificado el equipo, y
+    // las modificaciones simultáneas se repiten sobre la última versión
+    public Equipo modificaNombreEquipo(Long equipo_id, String nuevo_nombre, Long versionEsperada) {
+        logger.debug("Cambiando el nombre del equipo: {} a {}", equipo_id, nuevo_nombre);
+        return ReintentosConflicto.ejecutar(transactionManager, logger, () -> {
+            Equipo equipo = equipoRepository.findById(equipo_id).orElse(null);
+
+            if (equipo == null)
+                throw new EquipoServiceException("No existe el equipo");
+            if (versionEsperada != null && !versionEsperada.equals(equipo.getVersion()))
+                throw new ConflictoVersionException("El equipo " + equipo_id + " ha sido modificado por otro usuario");
+
+            equipo.setNombre(nuevo_nombre);
+            return equipoRepository.save(equipo);
+        });
     }
 
+    // El borrado es una única sentencia JPQL sobre el equipo: Hibernate
+    // elimina antes sus filas de equipo_usuario con otra sentencia, sin
+    // cargar los miembros, así que son dos sentencias en memoria constante.
     @Transactional
     public void removeEquipo(Long equipo_id) {
-        logger.debug("Borrando equipo " + equipo_id);
-        Equipo equipo = equipoRepository.findById(equipo_id).orElse(null);
-
-        if (equipo == null)
+        logger.debug("Borrando equipo {}", equipo_id);
+        if (equipoRepository.eliminarEquipo(equipo_id) == 0)
             throw new EquipoServiceException("No existe el equipo");
-
-        List<Usuario> usuarios = new ArrayList(equipo.getUsuarios());
-
-        for (Usuario usuario : usuarios) {
-            if (usuario.getEquipos().contains(equipo))
-                equipo.removeUsuario(usuario);
-        }
-
-        equipoRepository.delete(equipo);
     }
 }
@@ -0,0 +1,40 @@
+package madstodolist.service;
+
+// Aciertos, fallos y escrituras de una región de la caché de
+// segundo nivel de Hibernate desde el arranque de la aplicación
+public class EstadisticasRegion {
+    private final String region;
+    private final long aciertos;
+    private final long fallos;
+    private final long escrituras;
+    private final long elementos;
+
+    public EstadisticasRegion(String region, long aciertos, long fallos, long escrituras, long elementos) {
+        this.region = region;
+        this.aciertos = aciertos;
+        this.fallos = fallos;
+        this.escrituras = escrituras;
+        this.elementos = elementos;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public long getAciertos() {
+        return aciertos;
+    }
+
+    public long getFallos() {
+        return fallos;
+    }
+
+    public long getEscrituras() {
+        return escrituras;
+    }
+
+    // Número de elementos en memoria, o -1 si la caché no lo proporciona
+    public long getElementos() {
+        return elementos;
+    }
+}
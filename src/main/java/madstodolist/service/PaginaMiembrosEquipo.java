@@ -0,0 +1,32 @@
+package madstodolist.service;
+
+import madstodolist.model.Equipo;
+import madstodolist.model.MiembroEquipo;
+
+import java.util.List;
+
+// Cabecera del equipo junto con una página de sus miembros y el número
+// total de miembros, recuperados en una misma transacción
+public class PaginaMiembrosEquipo {
+    private final Equipo equipo;
+    private final List<MiembroEquipo> miembros;
+    private final long numMiembros;
+
+    public PaginaMiembrosEquipo(Equipo equipo, List<MiembroEquipo> miembros, long numMiembros) {
+        this.equipo = equipo;
+        this.miembros = miembros;
+        this.numMiembros = numMiembros;
+    }
+
+    public Equipo getEquipo() {
+        return equipo;
+    }
+
+    public List<MiembroEquipo> getMiembros() {
+        return miembros;
+    }
+
+    public long getNumMiembros() {
+        return numMiembros;
+    }
+}
@@ -0,0 +1,56 @@
+package madstodolist.service;
+
+import org.slf4j.Logger;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+// Ejecuta una modificación en su propia transacción y la repite si falla
+// porque otra transacción ha modificado las mismas filas a la vez (el
+// bloqueo optimista con @Version detecta el conflicto al hacer commit).
+// Cada intento vuelve a leer los datos, por lo que la modificación se
+// aplica sobre la última versión. Entre intentos se espera un tiempo
+// aleatorio de hasta 2^intento ms (como mucho ESPERA_MAXIMA_MS) para que
+// los hilos en conflicto no vuelvan a coincidir. Si se agotan los
+// intentos lanza ConflictoVersionException.
+//
+// La versión (@Version en Tarea y Equipo) la incrementa Hibernate en cada
+// modificación y la comprueba en el UPDATE, de forma que una modificación
+// hecha sobre una versión antigua falla en lugar de sobrescribir la más
+// reciente. La columna tiene el valor por defecto 0: al añadirla a una
+// tabla existente, las filas anteriores empiezan en la versión 0 sin
+// tener que actualizarlas en cada arranque.
+class ReintentosConflicto {
+
+    static final int MAX_INTENTOS = 20;
+    static final int ESPERA_MAXIMA_MS = 100;
+
+    private ReintentosConflicto() {}
+
+    static <T> T ejecutar(PlatformTransactionManager transactionManager, Logger logger, Supplier<T> modificacion) {
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        for (int intento = 1; ; intento++) {
+            try {
+                return transaccion.execute(status -> modificacion.get());
+            } catch (ConcurrencyFailureException e) {
+                if (intento == MAX_INTENTOS)
+                    throw new ConflictoVersionException("No se ha podido guardar la modificación por modificaciones simultáneas");
+                logger.debug("Conflicto de versión, intento {}: {}", intento, e.getMessage());
+                esperar(intento);
+            }
+        }
+    }
+
+    private static void esperar(int intento) {
+        try {
+            int espera = Math.min(1 << Math.min(intento, 7), ESPERA_MAXIMA_MS);
+            Thread.sleep(ThreadLocalRandom.current().nextInt(1, espera + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictoVersionException("Interrumpida la modificación");
+        }
+    }
+}
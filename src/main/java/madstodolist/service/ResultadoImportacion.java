@@ -0,0 +1,31 @@
+package madstodolist.service;
+
+// Resumen de una importación de tareas: número de tareas
+// guardadas, de entradas vacías omitidas y de lotes (transacciones)
+// ejecutados.
+public class ResultadoImportacion {
+    private long importadas;
+    private long omitidas;
+    private int lotes;
+
+    void loteImportado(int tareas) {
+        this.importadas += tareas;
+        this.lotes++;
+    }
+
+    void omitida() {
+        this.omitidas++;
+    }
+
+    public long getImportadas() {
+        return importadas;
+    }
+
+    public long getOmitidas() {
+        return omitidas;
+    }
+
+    public int getLotes() {
+        return lotes;
+    }
+}
@@ -0,0 +1,41 @@
+package madstodolist.service;
+
+// Resultado de un intento de login. Si el login es correcto
+// contiene el id, el nombre y si el usuario es administrador.
+public class ResultadoLogin {
+    private final UsuarioService.LoginStatus status;
+    private final Long idUsuario;
+    private final String nombre;
+    private final Boolean isAdmin;
+
+    private ResultadoLogin(UsuarioService.LoginStatus status, Long idUsuario, String nombre, Boolean isAdmin) {
+        this.status = status;
+        this.idUsuario = idUsuario;
+        this.nombre = nombre;
+        this.isAdmin = isAdmin;
+    }
+
+    public static ResultadoLogin ok(Long idUsuario, String nombre, Boolean isAdmin) {
+        return new ResultadoLogin(UsuarioService.LoginStatus.LOGIN_OK, idUsuario, nombre, isAdmin);
+    }
+
+    public static ResultadoLogin error(UsuarioService.LoginStatus status) {
+        return new ResultadoLogin(status, null, null, null);
+    }
+
+    public UsuarioService.LoginStatus getStatus() {
+        return status;
+    }
+
+    public Long getIdUsuario() {
+        return idUsuario;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public Boolean getIsAdmin() {
+        return isAdmin;
+    }
+}
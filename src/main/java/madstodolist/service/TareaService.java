@@ -7,12 +7,21 @@ import madstodolist.model.UsuarioRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class TareaService {
@@ -23,10 +32,14 @@ public class TareaService {
     private UsuarioRepository usuarioRepository;
     @Autowired
     private TareaRepository tareaRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Transactional
     public Tarea nuevaTareaUsuario(Long idUsuario, String tituloTarea) {
-        logger.debug("Añadiendo tarea " + tituloTarea + " al usuario " + idUsuario);
+        logger.debug("Añadiendo tarea {} al usuario {}", tituloTarea, idUsuario);
         Usuario usuario = usuarioRepository.findById(idUsuario).orElse(null);
         if (usuario == null) {
             throw new TareaServiceException("Usuario " + idUsuario + " no existe al crear tarea " + tituloTarea);
@@ -36,10 +49,95 @@ public class TareaService {
         return tarea;
     }
 
+    // Añade al usuario una tarea por cada título de la lista.
+    // Las tareas se guardan juntas para que, con los ids obtenidos de
+    // secuencias, Hibernate pueda enviar las inserciones en lotes JDBC.
+    @Transactional
+    public List<Tarea> nuevasTareasUsuario(Long idUsuario, List<String> titulos) {
+        // Los mensajes de log usan parámetros para no construir el texto si
+        // el nivel debug está desactivado. Con más de dos parámetros (array
+        // de argumentos) o con tipos primitivos (boxing) se comprueba antes
+        // el nivel, de forma que la llamada no reserva memoria.
+        if (logger.isDebugEnabled())
+            logger.debug("Añadiendo {} tareas al usuario {}", titulos.size(), idUsuario);
+        Usuario usuario = usuarioRepository.findById(idUsuario).orElse(null);
+        if (usuario == null) {
+            throw new TareaServiceException("Usuario " + idUsuario + " no existe al crear tareas");
+        }
+        return guardarTareas(usuario, titulos);
+    }
+
+    // Importa las tareas que va devolviendo el iterador en lotes de
+    // 'tamLote' tareas. Cada lote se guarda en su propia transacción, de
+    // forma que la memoria usada no depende del número total de tareas.
+    // Los títulos vacíos se omiten. Si se produce un error, los lotes
+    // anteriores ya quedan guardados.
+    public ResultadoImportacion importarTareasUsuario(Long idUsuario, Iterator<String> titulos, int tamLote) {
+        return importarTareasUsuario(idUsuario, titulos, tamLote, new ResultadoImportacion());
+    }
+
+    // Igual que el anterior, pero acumulando en 'resultado', que se
+    // actualiza después de cada lote: si la importación se interrumpe, el
+    // llamante sabe cuántas tareas han quedado guardadas.
+    public ResultadoImportacion importarTareasUsuario(Long idUsuario, Iterator<String> titulos, int tamLote,
+                                                      ResultadoImportacion resultado) {
+        if (logger.isDebugEnabled())
+            logger.debug("Importando tareas del usuario {} en lotes de {}", idUsuario, tamLote);
+        if (!usuarioRepository.existsById(idUsuario)) {
+            throw new TareaServiceException("Usuario " + idUsuario + " no existe al importar tareas");
+        }
+        if (tamLote < 1) {
+            throw new TareaServiceException("El tamaño de lote debe ser mayor que 0");
+        }
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        List<String> lote = new ArrayList<>(tamLote);
+        while (titulos.hasNext()) {
+            String titulo = titulos.next();
+            if (titulo == null || titulo.trim().isEmpty()) {
+                resultado.omitida();
+                continue;
+            }
+            lote.add(titulo);
+            if (lote.size() == tamLote) {
+                guardarLote(transaccion, idUsuario, lote, resultado);
+            }
+        }
+        if (!lote.isEmpty()) {
+            guardarLote(transaccion, idUsuario, lote, resultado);
+        }
+        if (logger.isDebugEnabled())
+            logger.debug("Importadas {} tareas del usuario {}", resultado.getImportadas(), idUsuario);
+        return resultado;
+    }
+
+    private void guardarLote(TransactionTemplate transaccion, Long idUsuario, List<String> lote,
+                             ResultadoImportacion resultado) {
+        // El usuario se comprueba al empezar la importación; cada lote sólo
+        // usa una referencia a él, sin leerlo ni cargar sus tareas, de
+        // forma que el coste de cada lote no depende de las tareas ya
+        // importadas
+        transaccion.executeWithoutResult(status ->
+                guardarTareas(entityManager.getReference(Usuario.class, idUsuario), lote));
+        resultado.loteImportado(lote.size());
+        if (logger.isDebugEnabled())
+            logger.debug("Lote {} importado: {} tareas del usuario {}",
+                    resultado.getLotes(), resultado.getImportadas(), idUsuario);
+        lote.clear();
+    }
+
+    private List<Tarea> guardarTareas(Usuario usuario, List<String> titulos) {
+        List<Tarea> tareas = new ArrayList<>(titulos.size());
+        for (String titulo : titulos) {
+            tareas.add(new Tarea(usuario, titulo));
+        }
+        tareaRepository.saveAll(tareas);
+        return tareas;
+    }
+
     @Transactional(readOnly = true)
     public List<Tarea> allTareasUsuario(Long idUsuario) {
-        logger.debug("Devolviendo todas las tareas del usuario " + idUsuario);
-        Usuario usuario = usuarioRepository.findById(idUsuario).orElse(null);
+        logger.debug("Devolviendo todas las tareas del usuario {}", idUsuario);
+        Usuario usuario = usuarioRepository.findConTareasById(idUsuario).orElse(null);
         if (usuario == null) {
             throw new TareaServiceException("Usuario " + idUsuario + " no existe al listar tareas ");
         }
@@ -48,27 +146,104 @@ public class TareaService {
         return tareas;
     }
 
+    // Devuelve como máximo 'tamPagina' tareas del usuario con id mayor
+    // que 'despuesDeId' (todas si es null), ordenadas por id.
+    // El coste no depende del número total de tareas del usuario.
+    @Transactional(readOnly = true)
+    public List<Tarea> tareasUsuarioPaginadas(Long idUsuario, Long despuesDeId, int tamPagina) {
+        if (logger.isDebugEnabled())
+            logger.debug("Devolviendo {} tareas del usuario {} a partir de la tarea {}", tamPagina, idUsuario, despuesDeId);
+        if (!usuarioRepository.existsById(idUsuario)) {
+            throw new TareaServiceException("Usuario " + idUsuario + " no existe al listar tareas ");
+        }
+        if (tamPagina < 1) {
+            throw new TareaServiceException("El tamaño de página debe ser mayor que 0");
+        }
+        Long desde = (despuesDeId == null) ? 0L : despuesDeId;
+        return tareaRepository.findByUsuarioIdAndIdGreaterThanOrderByIdAsc(idUsuario, desde, PageRequest.of(0, tamPagina));
+    }
+
+    // Devuelve como máximo 'tamPagina' tareas del usuario cuyo título
+    // contiene 'texto' (sin distinguir mayúsculas), con id mayor que
+    // 'despuesDeId' y ordenadas por id. Los caracteres % y _ del texto
+    // se buscan literalmente. Con un texto vacío equivale al listado.
+    @Transactional(readOnly = true)
+    public List<Tarea> buscarTareasUsuario(Long idUsuario, String texto, Long despuesDeId, int tamPagina) {
+        if (texto == null || texto.trim().isEmpty()) {
+            return tareasUsuarioPaginadas(idUsuario, despuesDeId, tamPagina);
+        }
+        if (logger.isDebugEnabled())
+            logger.debug("Buscando '{}' en las tareas del usuario {} a partir de la tarea {}", texto, idUsuario, despuesDeId);
+        if (!usuarioRepository.existsById(idUsuario)) {
+            throw new TareaServiceException("Usuario " + idUsuario + " no existe al buscar tareas ");
+        }
+        if (tamPagina < 1) {
+            throw new TareaServiceException("El tamaño de página debe ser mayor que 0");
+        }
+        String escapado = texto.trim().toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        Long desde = (despuesDeId == null) ? 0L : despuesDeId;
+        return tareaRepository.buscarPorTitulo(idUsuario, "%" + escapado + "%", desde, PageRequest.of(0, tamPagina));
+    }
+
+    // Recorre todas las tareas del usuario, ordenadas por id, pasándolas
+    // una a una al consumidor. Cada tarea se separa del contexto de
+    // persistencia después de procesarla, de forma que la memoria usada
+    // no depende del número de tareas. Devuelve el número de tareas.
+    @Transactional(readOnly = true)
+    public long exportarTareasUsuario(Long idUsuario, Consumer<Tarea> consumidor) {
+        logger.debug("Exportando las tareas del usuario {}", idUsuario);
+        if (!usuarioRepository.existsById(idUsuario)) {
+            throw new TareaServiceException("Usuario " + idUsuario + " no existe al exportar tareas");
+        }
+        long total = 0;
+        try (Stream<Tarea> tareas = tareaRepository.streamByUsuarioId(idUsuario)) {
+            Iterator<Tarea> iterator = tareas.iterator();
+            while (iterator.hasNext()) {
+                Tarea tarea = iterator.next();
+                consumidor.accept(tarea);
+                entityManager.detach(tarea);
+                total++;
+            }
+        }
+        return total;
+    }
+
     @Transactional(readOnly = true)
     public Tarea findById(Long tareaId) {
-        logger.debug("Buscando tarea " + tareaId);
+        logger.debug("Buscando tarea {}", tareaId);
         return tareaRepository.findById(tareaId).orElse(null);
     }
 
-    @Transactional
     public Tarea modificaTarea(Long idTarea, String nuevoTitulo) {
-        logger.debug("Modificando tarea " + idTarea + " - " + nuevoTitulo);
-        Tarea tarea = tareaRepository.findById(idTarea).orElse(null);
-        if (tarea == null) {
-            throw new TareaServiceException("No existe tarea con id " + idTarea);
-        }
-        tarea.setTitulo(nuevoTitulo);
-        tareaRepository.save(tarea);
-        return tarea;
+        return modificaTarea(idTarea, nuevoTitulo, null);
+    }
+
+    // Modifica el título de la tarea. Si 'versionEsperada' no es null y la
+    // tarea ya no tiene esa versión (otro usuario la ha modificado desde
+    // que la leyó quien hace la modificación) lanza ConflictoVersionException.
+    // Si otra transacción modifica la tarea a la vez se vuelve a leer y se
+    // repite la modificación (ReintentosConflicto), sin bloquear la fila.
+    public Tarea modificaTarea(Long idTarea, String nuevoTitulo, Long versionEsperada) {
+        logger.debug("Modificando tarea {} - {}", idTarea, nuevoTitulo);
+        return ReintentosConflicto.ejecutar(transactionManager, logger, () -> {
+            Tarea tarea = tareaRepository.findById(idTarea).orElse(null);
+            if (tarea == null) {
+                throw new TareaServiceException("No existe tarea con id " + idTarea);
+            }
+            if (versionEsperada != null && !versionEsperada.equals(tarea.getVersion())) {
+                throw new ConflictoVersionException("La tarea " + idTarea + " ha sido modificada por otro usuario");
+            }
+            tarea.setTitulo(nuevoTitulo);
+            return tareaRepository.save(tarea);
+        });
     }
 
     @Transactional
     public void borraTarea(Long idTarea) {
-        logger.debug("Borrando tarea " + idTarea);
+        logger.debug("Borrando tarea {}", idTarea);
         Tarea tarea = tareaRepository.findById(idTarea).orElse(null);
         if (tarea == null) {
             throw new TareaServiceException("No existe tarea con id " + idTarea);
@@ -1,16 +1,30 @@
 package madstodolist.service;
 
+import madstodolist.authentication.EjecutorPasswords;
+import madstodolist.authentication.PasswordHasher;
 import madstodolist.model.Usuario;
+import madstodolist.model.UsuarioLogin;
 import madstodolist.model.UsuarioRepository;
+import madstodolist.model.UsuarioResumen;
+import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class UsuarioService {
@@ -19,36 +33,85 @@ public class UsuarioService {
 
     public enum LoginStatus {LOGIN_OK, USER_NOT_FOUND, ERROR_PASSWORD}
 
+    // Campos por los que se puede ordenar el listado de usuarios
+    public static final Set<String> CAMPOS_ORDEN_DIRECTORIO =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList("email", "nombre", "id")));
+
     @Autowired
     private UsuarioRepository usuarioRepository;
+    @Autowired
+    private PasswordHasher passwordHasher;
+    @Autowired
+    private EjecutorPasswords ejecutorPasswords;
 
-    @Transactional(readOnly = true)
     public LoginStatus login(String eMail, String password) {
-        Optional<Usuario> usuario = usuarioRepository.findByEmail(eMail);
+        return autenticar(eMail, password).getStatus();
+    }
+
+    // Comprueba el login con una única consulta por email que sólo
+    // recupera los datos necesarios (proyección UsuarioLogin) y
+    // devuelve, si es correcto, el id y el nombre del usuario.
+    // La contraseña se comprueba fuera de transacción, en el pool acotado
+    // de EjecutorPasswords. Si el hash guardado usa un coste distinto
+    // del configurado (o es una contraseña en claro) se recalcula.
+    public ResultadoLogin autenticar(String eMail, String password) {
+        Optional<UsuarioLogin> usuario = usuarioRepository.findLoginByEmail(eMail);
         if (!usuario.isPresent()) {
-            return LoginStatus.USER_NOT_FOUND;
-        } else if (!usuario.get().getPassword().equals(password)) {
-            return LoginStatus.ERROR_PASSWORD;
-        } else {
-            return LoginStatus.LOGIN_OK;
+            return ResultadoLogin.error(LoginStatus.USER_NOT_FOUND);
+        }
+        String hash = usuario.get().getPassword();
+        if (!ejecutorPasswords.verificar(password, hash)) {
+            return ResultadoLogin.error(LoginStatus.ERROR_PASSWORD);
         }
+        if (passwordHasher.necesitaRehash(hash)) {
+            logger.debug("Recalculando el hash de la contraseña del usuario {}", usuario.get().getId());
+            usuarioRepository.actualizarPassword(usuario.get().getId(), ejecutorPasswords.hash(password));
+        }
+        return ResultadoLogin.ok(usuario.get().getId(), usuario.get().getNombre(), usuario.get().getIsAdmin());
     }
 
     // Se añade un usuario en la aplicación.
     // El email y password del usuario deben ser distinto de null
-    // El email no debe estar registrado en la base de datos
-    @Transactional
+    // La contraseña se guarda como hash (ver PasswordHasher)
+    // El email no debe estar registrado en la base de datos. No se
+    // comprueba antes de insertar: se usa la restricción de unicidad
+    // sobre el email, que también detecta registros simultáneos.
+    // Al registrar un usuario se invalida la caché del administrador.
+    // No es @Transactional: el hash de la contraseña se calcula antes de
+    // abrir la transacción de la inserción (la de saveAndFlush), para no
+    // tener una conexión ocupada mientras se espera al pool de
+    // EjecutorPasswords.
+    @CacheEvict(value = "admin", allEntries = true)
     public Usuario registrar(Usuario usuario) {
-        Optional<Usuario> usuarioBD = usuarioRepository.findByEmail(usuario.getEmail());
-        if (usuarioBD.isPresent())
-            throw new UsuarioServiceException("El usuario " + usuario.getEmail() + " ya está registrado");
-        else if (usuario.getEmail() == null)
+        if (usuario.getEmail() == null)
             throw new UsuarioServiceException("El usuario no tiene email");
         else if (usuario.getPassword() == null)
             throw new UsuarioServiceException("El usuario no tiene password");
-        else if (usuario.getIsAdmin() != null && usuario.getIsAdmin() && findAdmin() != null)
+        else if (usuario.getIsAdmin() != null && usuario.getIsAdmin() && usuarioRepository.existsByIsAdminTrue())
             throw new UsuarioServiceException("Ya existe un administrador");
-        else return usuarioRepository.save(usuario);
+
+        // Nunca se guarda la contraseña en claro
+        usuario.setPassword(ejecutorPasswords.hash(usuario.getPassword()));
+
+        try {
+            return usuarioRepository.saveAndFlush(usuario);
+        } catch (DataIntegrityViolationException e) {
+            // Cualquier otra violación (datos demasiado largos, otras
+            // restricciones) no significa que el email esté repetido
+            if (!violaEmailUnico(e))
+                throw e;
+            throw new UsuarioServiceException("El usuario " + usuario.getEmail() + " ya está registrado");
+        }
+    }
+
+    // Indica si la excepción se debe a la restricción de unicidad sobre
+    // el email (uk_usuarios_email). Según la base de datos el nombre de
+    // la restricción viene en mayúsculas o con más texto alrededor.
+    private static boolean violaEmailUnico(DataIntegrityViolationException e) {
+        if (!(e.getCause() instanceof ConstraintViolationException))
+            return false;
+        String restriccion = ((ConstraintViolationException) e.getCause()).getConstraintName();
+        return restriccion != null && restriccion.toLowerCase().contains("uk_usuarios_email");
     }
 
     @Transactional(readOnly = true)
@@ -61,19 +124,57 @@ public class UsuarioService {
         return usuarioRepository.findById(usuarioId).orElse(null);
     }
 
+    // Devuelve el usuario con su colección de equipos ya cargada,
+    // para las vistas que necesitan consultarla
+    @Transactional(readOnly = true)
+    public Usuario findByIdConEquipos(Long usuarioId) {
+        return usuarioRepository.findConEquiposById(usuarioId).orElse(null);
+    }
+
     @Transactional(readOnly = true)
     public Iterable<Usuario> allUsuarios() {
         return usuarioRepository.findAll();
     }
 
+    // Página 'pagina' (desde 0) del listado de usuarios ordenada por el
+    // campo indicado (email, nombre o id) y, en caso de empate, por id.
+    // Si 'prefijo' no está vacío sólo se devuelven los usuarios cuyo email
+    // o nombre empiezan por él.
+    @Transactional(readOnly = true)
+    public Page<UsuarioResumen> directorioUsuarios(String prefijo, String orden, boolean descendente,
+                                                   int pagina, int tamPagina) {
+        if (logger.isDebugEnabled())
+            logger.debug("Devolviendo la página {} del listado de usuarios con prefijo '{}' ordenado por {}",
+                    pagina, prefijo, orden);
+        if (!CAMPOS_ORDEN_DIRECTORIO.contains(orden))
+            throw new UsuarioServiceException("No se puede ordenar el listado de usuarios por " + orden);
+        if (pagina < 0 || tamPagina < 1)
+            throw new UsuarioServiceException("Página del listado de usuarios no válida");
+
+        Sort sort = Sort.by(descendente ? Sort.Direction.DESC : Sort.Direction.ASC, orden);
+        if (!orden.equals("id"))
+            sort = sort.and(Sort.by("id"));
+        Pageable pageable = PageRequest.of(pagina, tamPagina, sort);
+
+        if (prefijo == null || prefijo.isEmpty())
+            return usuarioRepository.findResumenBy(pageable);
+        return usuarioRepository.findResumenByEmailStartingWithOrNombreStartingWith(prefijo, prefijo, pageable);
+    }
+
     // En caso de existir usuario administrador, lo devolverá
     // En caso contrario devolverá 'null'
     @Transactional(readOnly = true)
     public Usuario findAdmin() {
-        Iterable<Usuario> iterable_admin = usuarioRepository.findByIsAdminTrue();
-        List<Usuario> list_admin = new ArrayList<Usuario>();
-        iterable_admin.forEach(list_admin::add);
+        return usuarioRepository.findFirstByIsAdminTrue().orElse(null);
+    }
 
-        return (list_admin.isEmpty()) ? null : list_admin.get(0);
+    // Devuelve el id del usuario administrador o 'null' si no existe.
+    // El resultado se guarda en la caché "admin" cuando existe el
+    // administrador, de forma que las comprobaciones de autorización
+    // no acceden a la base de datos. La caché se invalida en 'registrar'.
+    @Transactional(readOnly = true)
+    @Cacheable(value = "admin", unless = "#result == null")
+    public Long findAdminId() {
+        return usuarioRepository.findFirstByIsAdminTrue().map(Usuario::getId).orElse(null);
     }
 }
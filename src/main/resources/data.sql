@@ -1,4 +1,5 @@
 /* Populate tables */
-INSERT INTO usuarios (id, email, nombre, password, fecha_nacimiento) VALUES('1', 'user@ua', 'Usuario Ejemplo', '123', '2001-02-10');
-INSERT INTO tareas (id, titulo, usuario_id) VALUES('1', 'Lavar coche', '1');
-INSERT INTO tareas (id, titulo, usuario_id) VALUES('2', 'Renovar DNI', '1');
+/* Los ids se obtienen de las secuencias para no colisionar con los que genera Hibernate */
+INSERT INTO usuarios (id, email, nombre, password, fecha_nacimiento) VALUES(NEXT VALUE FOR usuarios_seq, 'user@ua', 'Usuario Ejemplo', '123', '2001-02-10');
+INSERT INTO tareas (id, titulo, version, usuario_id) VALUES(NEXT VALUE FOR tareas_seq, 'Lavar coche', 0, (SELECT id FROM usuarios WHERE email = 'user@ua'));
+INSERT INTO tareas (id, titulo, version, usuario_id) VALUES(NEXT VALUE FOR tareas_seq, 'Renovar DNI', 0, (SELECT id FROM usuarios WHERE email = 'user@ua'));
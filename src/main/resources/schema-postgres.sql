@@ -0,0 +1,35 @@
+-- Índices específicos de PostgreSQL que no se pueden declarar con
+-- anotaciones JPA. Se ejecuta en cada arranque con el perfil postgres,
+-- después de que Hibernate actualice el esquema, por lo que todas las
+-- sentencias deben poder repetirse.
+
+-- Secuencias de los ids (optimizador pooled-lo, bloques de 50). En un
+-- esquema creado con columnas IDENTITY pueden no existir o empezar por
+-- debajo de los ids ya usados; se crean si faltan y se adelantan al
+-- siguiente id libre sólo si hay ids por encima de todos los bloques ya
+-- repartidos. Con pooled-lo last_value es el primer id del último bloque
+-- repartido, que algún nodo en marcha puede estar usando todavía hasta
+-- last_value + 49: adelantar la secuencia en otro caso la haría volver
+-- a ese bloque y repetiría ids.
+CREATE SEQUENCE IF NOT EXISTS usuarios_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS tareas_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS equipos_seq START WITH 1 INCREMENT BY 50;
+SELECT setval('usuarios_seq', m.id + 1, false) FROM (SELECT max(id) AS id FROM usuarios) m, usuarios_seq s
+    WHERE m.id >= s.last_value + CASE WHEN s.is_called THEN 50 ELSE 0 END;
+SELECT setval('tareas_seq', m.id + 1, false) FROM (SELECT max(id) AS id FROM tareas) m, tareas_seq s
+    WHERE m.id >= s.last_value + CASE WHEN s.is_called THEN 50 ELSE 0 END;
+SELECT setval('equipos_seq', m.id + 1, false) FROM (SELECT max(id) AS id FROM equipos) m, equipos_seq s
+    WHERE m.id >= s.last_value + CASE WHEN s.is_called THEN 50 ELSE 0 END;
+
+-- Búsqueda de tareas por título (TareaRepository.buscarPorTitulo):
+-- índice GIN de trigramas sobre lower(titulo), que permite resolver
+-- lower(titulo) LIKE '%texto%' sin recorrer las tareas
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_tareas_titulo_trgm ON tareas USING gin (lower(titulo) gin_trgm_ops);
+
+-- Búsqueda del listado de usuarios por prefijo del email o del nombre
+-- (email LIKE 'texto%'). Con una intercalación distinta de C los índices
+-- normales (uk_usuarios_email, idx_usuarios_nombre) no sirven para LIKE;
+-- estos sí, y los otros se siguen usando para la igualdad y la ordenación
+CREATE INDEX IF NOT EXISTS idx_usuarios_email_prefijo ON usuarios (email varchar_pattern_ops);
+CREATE INDEX IF NOT EXISTS idx_usuarios_nombre_prefijo ON usuarios (nombre varchar_pattern_ops);
@@ -7,8 +7,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.web.servlet.MockMvc;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.matchesPattern;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -22,4 +24,19 @@ public class AcercaDeWebTest {
         this.mockMvc.perform(get("/about"))
                 .andExpect(content().string(containsString("ToDoList")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void cadaPeticionDevuelveUnIdDePeticion() throws Exception {
+        // Sin cabecera se genera un id nuevo
+        this.mockMvc.perform(get("/about"))
+                .andExpect(header().string("X-Request-Id", matchesPattern("[0-9a-f-]{36}")));
+
+        // Un id válido recibido se reutiliza
+        this.mockMvc.perform(get("/about").header("X-Request-Id", "abc-123"))
+                .andExpect(header().string("X-Request-Id", "abc-123"));
+
+        // Un id no válido se sustituye por uno nuevo
+        this.mockMvc.perform(get("/about").header("X-Request-Id", "no válido\n"))
+                .andExpect(header().string("X-Request-Id", matchesPattern("[0-9a-f-]{36}")));
+    }
+}
@@ -1,22 +1,40 @@
 package madstodolist;
 
 import madstodolist.model.Equipo;
+import madstodolist.model.EquipoRepository;
+import madstodolist.model.MiembroEquipo;
 import madstodolist.model.Usuario;
+import madstodolist.model.UsuarioRepository;
+import madstodolist.service.CacheService;
+import madstodolist.service.ConflictoVersionException;
+import madstodolist.service.EquipoListado;
 import madstodolist.service.EquipoService;
 import madstodolist.service.EquipoServiceException;
+import madstodolist.service.EstadisticasRegion;
+import madstodolist.service.PaginaMiembrosEquipo;
 import madstodolist.service.UsuarioService;
 
 import org.hibernate.LazyInitializationException;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityManagerFactory;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
 
+import java.sql.SQLException;
 import java.util.List;
 
 @SpringBootTest
@@ -29,6 +47,27 @@ public class EquipoServiceTest {
     @Autowired
     UsuarioService usuarioService;
 
+    @Autowired
+    CacheService cacheService;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    // Estadísticas de Hibernate (generate_statistics está activado),
+    // puestas a cero
+    Statistics estadisticasHibernate() {
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        return estadisticas;
+    }
+
+    private long aciertosCache(String region) {
+        return cacheService.estadisticasRegiones().stream()
+                .filter(e -> e.getRegion().equals(region))
+                .mapToLong(EstadisticasRegion::getAciertos)
+                .sum();
+    }
+
     @Test
     public void crearRecuperarEquipo() {
         Equipo equipo = equipoService.crearEquipo("Proyecto 1");
@@ -55,6 +94,109 @@ public class EquipoServiceTest {
         assertThat(equipos.get(1).getNombre()).isEqualTo("Proyecto BBB");
     }
 
+    @Test
+    public void listadoEquiposUsuarioIndicaPertenencia() {
+        // GIVEN
+        // Un usuario miembro de uno de dos equipos
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setPassword("123");
+        usuario = usuarioService.registrar(usuario);
+        Equipo equipoA = equipoService.crearEquipo("Proyecto AAA");
+        Equipo equipoB = equipoService.crearEquipo("Proyecto BBB");
+        equipoService.addUsuarioEquipo(usuario.getId(), equipoB.getId());
+
+        // WHEN
+        // Recuperamos el listado de equipos para el usuario
+        List<EquipoListado> equipos = equipoService.listadoEquiposUsuario(usuario.getId(), null, null, 10);
+
+        // THEN
+        // Los equipos están ordenados por nombre y sólo el segundo
+        // aparece marcado como propio
+        assertThat(equipos).hasSize(2);
+        assertThat(equipos.get(0).getId()).isEqualTo(equipoA.getId());
+        assertThat(equipos.get(0).isMiembro()).isFalse();
+        assertThat(equipos.get(1).getNombre()).isEqualTo("Proyecto BBB");
+        assertThat(equipos.get(1).isMiembro()).isTrue();
+    }
+
+    @Test
+    public void listadoEquiposPaginadoConNumeroDeMiembros() {
+        // GIVEN
+        // Tres equipos, dos de ellos con el mismo nombre, y dos usuarios
+        // miembros del equipo "Proyecto AAA"
+        Usuario usuario1 = new Usuario("user1@ua");
+        usuario1.setPassword("123");
+        usuario1 = usuarioService.registrar(usuario1);
+        Usuario usuario2 = new Usuario("user2@ua");
+        usuario2.setPassword("123");
+        usuario2 = usuarioService.registrar(usuario2);
+        Equipo equipoA = equipoService.crearEquipo("Proyecto AAA");
+        Equipo equipoB1 = equipoService.crearEquipo("Proyecto BBB");
+        Equipo equipoB2 = equipoService.crearEquipo("Proyecto BBB");
+        equipoService.addUsuarioEquipo(usuario1.getId(), equipoA.getId());
+        equipoService.addUsuarioEquipo(usuario2.getId(), equipoA.getId());
+
+        // WHEN
+        // Recuperamos dos páginas de dos equipos
+        List<EquipoListado> primera = equipoService.listadoEquiposUsuario(usuario1.getId(), null, null, 2);
+        EquipoListado ultimo = primera.get(primera.size() - 1);
+        List<EquipoListado> segunda = equipoService.listadoEquiposUsuario(usuario1.getId(),
+                ultimo.getNombre(), ultimo.getId(), 2);
+
+        // THEN
+        // Las páginas siguen el orden por nombre e id sin repetir equipos
+        // y cada equipo lleva su número de miembros
+        assertThat(primera).hasSize(2);
+        assertThat(primera.get(0).getId()).isEqualTo(equipoA.getId());
+        assertThat(primera.get(0).getNumMiembros()).isEqualTo(2);
+        assertThat(primera.get(1).getId()).isEqualTo(equipoB1.getId());
+        assertThat(primera.get(1).getNumMiembros()).isEqualTo(0);
+        assertThat(segunda).hasSize(1);
+        assertThat(segunda.get(0).getId()).isEqualTo(equipoB2.getId());
+        assertThat(equipoService.numeroEquipos()).isEqualTo(3);
+    }
+
+    @Test
+    public void listadoEquiposUsaCacheDeConsultas() {
+        // GIVEN
+        // Un equipo en la base de datos y el listado ya consultado una vez
+        equipoService.crearEquipo("Proyecto BBB");
+        equipoService.findAllOrderedByName();
+        long aciertos = aciertosCache("default-query-results-region");
+
+        // WHEN
+        // Volvemos a consultar el listado
+        List<Equipo> equipos = equipoService.findAllOrderedByName();
+
+        // THEN
+        // El resultado sale de la caché de consultas
+        assertThat(equipos).extracting(Equipo::getNombre).containsExactly("Proyecto BBB");
+        assertThat(aciertosCache("default-query-results-region")).isEqualTo(aciertos + 1);
+
+        // y se invalida al crear un equipo nuevo
+        equipoService.crearEquipo("Proyecto AAA");
+        assertThat(equipoService.findAllOrderedByName()).extracting(Equipo::getNombre)
+                .containsExactly("Proyecto AAA", "Proyecto BBB");
+    }
+
+    @Test
+    public void recuperarEquipoUsaCacheDeSegundoNivel() {
+        // GIVEN
+        // Un equipo guardado en la base de datos
+        Equipo equipo = equipoService.crearEquipo("Proyecto 1");
+        long aciertos = aciertosCache("equipos");
+
+        // WHEN
+        // Lo recuperamos en una nueva transacción después de renombrarlo
+        equipoService.modificaNombreEquipo(equipo.getId(), "Proyecto 2");
+        Equipo equipoBD = equipoService.recuperarEquipo(equipo.getId());
+
+        // THEN
+        // Se obtiene de la caché de segundo nivel con el nombre actualizado
+        assertThat(equipoBD.getNombre()).isEqualTo("Proyecto 2");
+        assertThat(aciertosCache("equipos")).isGreaterThan(aciertos);
+    }
+
     @Test
     public void accesoUsuariosGeneraExcepcion() {
         // Given
@@ -104,11 +246,11 @@ public class EquipoServiceTest {
         // WHEN
         // Añadimos el usuario al equipo y lo recuperamos
         equipoService.addUsuarioEquipo(usuario.getId(), equipo.getId());
-        Usuario usuarioBD = usuarioService.findById(usuario.getId());
+        Usuario usuarioBD = usuarioService.findByIdConEquipos(usuario.getId());
 
         // THEN
         // Se recuperan también los equipos del usuario,
-        // porque la relación entre usuarios y equipos es EAGER
+        // porque se usa el grafo que carga la relación
         assertThat(usuarioBD.getEquipos()).hasSize(1);
     }
 
@@ -130,7 +272,7 @@ public class EquipoServiceTest {
         // THEN
         // ERecuperamos al usuario y al equipo y este no pertenece al mismo
         Equipo equipoBD = equipoService.recuperarEquipo(equipo.getId());
-        Usuario usuarioBD = usuarioService.findById(usuario.getId());
+        Usuario usuarioBD = usuarioService.findByIdConEquipos(usuario.getId());
 
         List<Usuario> usuarios_equipo = equipoService.usuariosEquipo(equipoBD.getId());
 
@@ -205,6 +347,31 @@ public class EquipoServiceTest {
         });
     }
 
+    @Test
+    public void servicioAñadirUsuarioEquipoOtraViolacionNoEsMiembroRepetido() {
+        // GIVEN
+        // Un EquipoService cuyo repositorio falla al insertar el miembro
+        // por la clave ajena del equipo (el equipo se ha borrado después de
+        // comprobar que existía)
+        EquipoRepository equipoRepository = mock(EquipoRepository.class);
+        UsuarioRepository usuarioRepository = mock(UsuarioRepository.class);
+        when(equipoRepository.existsById(1L)).thenReturn(true);
+        when(usuarioRepository.existsById(2L)).thenReturn(true);
+        DataIntegrityViolationException claveAjena = new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("could not execute statement",
+                        new SQLException("Referential integrity constraint violation", "23506"),
+                        "FKK4Y9GEC15CCNIRP3R7W29O66P"));
+        when(equipoRepository.insertarMiembro(1L, 2L)).thenThrow(claveAjena);
+        EquipoService servicio = new EquipoService();
+        ReflectionTestUtils.setField(servicio, "equipoRepository", equipoRepository);
+        ReflectionTestUtils.setField(servicio, "usuarioRepository", usuarioRepository);
+
+        // WHEN, THEN
+        // al añadir el usuario la excepción de la BD no se confunde con
+        // que el usuario ya sea miembro
+        assertThatThrownBy(() -> servicio.addUsuarioEquipo(2L, 1L)).isSameAs(claveAjena);
+    }
+
     @Test
     public void servicioEliminarUsuarioNoExistenteEnEquipo() {
         /// Un equipo creado en la base de datos y un usuario registrado
@@ -253,6 +420,23 @@ public class EquipoServiceTest {
         assertThat(equipoBd.getNombre()).isEqualTo("Proyecto 1");
     }
 
+    @Test
+    public void testModificarNombreEquipoConVersionAntiguaLanzaConflicto() {
+        // GIVEN
+        // Un equipo cuyo nombre se ha modificado después de leerlo
+        Equipo equipo = equipoService.crearEquipo("Proyecto 1");
+        Long version = equipoService.recuperarEquipo(equipo.getId()).getVersion();
+        equipoService.modificaNombreEquipo(equipo.getId(), "Proyecto MADS", version);
+
+        // WHEN, THEN
+        // Una modificación sobre la versión leída lanza una excepción
+        // y el nombre no cambia
+        Assertions.assertThrows(ConflictoVersionException.class, () -> {
+            equipoService.modificaNombreEquipo(equipo.getId(), "Proyecto 2", version);
+        });
+        assertThat(equipoService.recuperarEquipo(equipo.getId()).getNombre()).isEqualTo("Proyecto MADS");
+    }
+
     @Test
     public void servicioEliminarEquipo() {
         // GIVEN
@@ -272,9 +456,94 @@ public class EquipoServiceTest {
         // THEN
         // El equipo no está en la base de datos ni en la lista de
         // equipos del usuarios
-        assertThat(usuarioService.findById(usuario.getId()).getEquipos().isEmpty());
+        assertThat(usuarioService.findByIdConEquipos(usuario.getId()).getEquipos()).isEmpty();
         Assertions.assertThrows(EquipoServiceException.class, () -> {
             equipoService.recuperarEquipo(equipo_id);
         });
     }
+
+    @Test
+    public void eliminarEquipoConVariosMiembrosNoAfectaAOtrosEquipos() {
+        // GIVEN
+        // Dos equipos con los mismos tres usuarios como miembros
+        Equipo equipoA = equipoService.crearEquipo("Proyecto A");
+        Equipo equipoB = equipoService.crearEquipo("Proyecto B");
+        for (int i = 0; i < 3; i++) {
+            Usuario usuario = new Usuario("user" + i + "@ua");
+            usuario.setPassword("123");
+            usuario = usuarioService.registrar(usuario);
+            equipoService.addUsuarioEquipo(usuario.getId(), equipoA.getId());
+            equipoService.addUsuarioEquipo(usuario.getId(), equipoB.getId());
+        }
+
+        // WHEN
+        // Eliminamos el primer equipo
+        Statistics estadisticas = estadisticasHibernate();
+        equipoService.removeEquipo(equipoA.getId());
+
+        // THEN
+        // Se eliminan sus miembros y el equipo con dos sentencias, sólo
+        // queda el segundo equipo, que conserva sus miembros, y volver a
+        // eliminar el primero lanza una excepción
+        assertThat(estadisticas.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(equipoService.numeroEquipos()).isEqualTo(1);
+        assertThat(equipoService.usuariosEquipo(equipoB.getId())).hasSize(3);
+        Assertions.assertThrows(EquipoServiceException.class, () -> {
+            equipoService.removeEquipo(equipoA.getId());
+        });
+    }
+
+    @Test
+    public void miembrosEquipoPaginadosOrdenadosPorId() {
+        // GIVEN
+        // Un equipo con cinco miembros
+        Equipo equipo = equipoService.crearEquipo("Proyecto 1");
+        for (int i = 0; i < 5; i++) {
+            Usuario usuario = new Usuario("user" + i + "@ua");
+            usuario.setNombre("Usuario " + i);
+            usuario.setPassword("123");
+            usuario = usuarioService.registrar(usuario);
+            equipoService.addUsuarioEquipo(usuario.getId(), equipo.getId());
+        }
+
+        // WHEN
+        // Recuperamos los miembros en páginas de dos
+        PaginaMiembrosEquipo primera = equipoService.miembrosEquipoPaginados(equipo.getId(), null, 2);
+        Long ultimo = primera.getMiembros().get(1).getId();
+        PaginaMiembrosEquipo segunda = equipoService.miembrosEquipoPaginados(equipo.getId(), ultimo, 2);
+
+        // THEN
+        // Cada página trae el equipo, el total de miembros y los miembros
+        // siguientes ordenados por id
+        assertThat(primera.getEquipo().getNombre()).isEqualTo("Proyecto 1");
+        assertThat(primera.getNumMiembros()).isEqualTo(5);
+        assertThat(primera.getMiembros()).extracting(MiembroEquipo::getEmail)
+                .containsExactly("user0@ua", "user1@ua");
+        assertThat(segunda.getMiembros()).extracting(MiembroEquipo::getNombre)
+                .containsExactly("Usuario 2", "Usuario 3");
+        Assertions.assertThrows(EquipoServiceException.class, () -> {
+            equipoService.miembrosEquipoPaginados(equipo.getId() + 1000, null, 2);
+        });
+    }
+
+    @Test
+    public void accesoEquiposUsuarioGeneraExcepcion() {
+        // GIVEN
+        // Un usuario registrado miembro de un equipo
+        Equipo equipo = equipoService.crearEquipo("Proyecto 1");
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setPassword("123");
+        usuario = usuarioService.registrar(usuario);
+        equipoService.addUsuarioEquipo(usuario.getId(), equipo.getId());
+
+        // WHEN
+        // Se recupera el usuario por su id
+        Usuario usuarioBD = usuarioService.findById(usuario.getId());
+
+        // THEN
+        // Sus equipos no se han cargado porque la relación es LAZY
+        assertThatThrownBy(() -> {
+            usuarioBD.getEquipos().size();
+        }).isInstanceOf(LazyInitializationException.class);
+    }
 }
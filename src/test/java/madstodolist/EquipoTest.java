@@ -3,6 +3,7 @@ package madstodolist;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -12,6 +13,7 @@ import madstodolist.model.Usuario;
 import madstodolist.model.UsuarioRepository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
 
 import java.util.List;
@@ -194,5 +196,29 @@ public class EquipoTest {
         equipoBD = equipoRepository.findById(equipo.getId()).orElse(null);
         assertThat(equipoBD.getNombre()).isEqualTo("Proyecto MADS");
     }
-        
+
+    @Test
+    public void insertarEliminarMiembroEnTablaEquipoUsuario() {
+        // GIVEN
+        // Un usuario y un equipo guardados en la base de datos
+        Usuario usuario = usuarioRepository.save(new Usuario("user@ua"));
+        Equipo equipo = equipoRepository.save(new Equipo("Equipo A"));
+
+        // WHEN
+        // Añadimos el usuario como miembro directamente en equipo_usuario
+        int insertadas = equipoRepository.insertarMiembro(equipo.getId(), usuario.getId());
+
+        // THEN
+        // Se inserta una fila y una segunda inserción viola la clave
+        // primaria (fk_equipo, fk_usuario)
+        assertThat(insertadas).isEqualTo(1);
+        assertThat(equipoRepository.findIdsByUsuarioId(usuario.getId())).containsExactly(equipo.getId());
+        assertThatThrownBy(() -> equipoRepository.insertarMiembro(equipo.getId(), usuario.getId()))
+                .isInstanceOf(DataIntegrityViolationException.class);
+
+        // Al eliminarlo se borra la fila y un segundo borrado no afecta a ninguna
+        assertThat(equipoRepository.eliminarMiembro(equipo.getId(), usuario.getId())).isEqualTo(1);
+        assertThat(equipoRepository.eliminarMiembro(equipo.getId(), usuario.getId())).isEqualTo(0);
+        assertThat(equipoRepository.findIdsByUsuarioId(usuario.getId())).isEmpty();
+    }
 }
@@ -1,6 +1,7 @@
 package madstodolist;
 
 import madstodolist.model.Equipo;
+import madstodolist.model.MiembroEquipo;
 import madstodolist.model.Usuario;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -8,7 +9,10 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.web.servlet.MockMvc;
 
 import madstodolist.authentication.ManagerUserSession;
+import madstodolist.authentication.UsuarioSesion;
+import madstodolist.service.EquipoListado;
 import madstodolist.service.EquipoService;
+import madstodolist.service.PaginaMiembrosEquipo;
 import madstodolist.service.UsuarioService;
 
 import static org.hamcrest.Matchers.*;
@@ -48,21 +52,17 @@ public class EquipoWebTest {
         usuario.setNombre("Usuario Ejemplo");
         usuario.setId(1L);
 
-        // Un equipo
-        Equipo equipo = new Equipo("Equipo A");
-
-        List<Equipo> listaEquipos = new ArrayList<Equipo>();
-        listaEquipos.add(equipo);
+        // Un equipo del que el usuario no es miembro
+        List<EquipoListado> listaEquipos = new ArrayList<EquipoListado>();
+        listaEquipos.add(new EquipoListado(1L, "Equipo A", 0, false));
 
         // Mockeamos el método usuarioLogeado para que nos devuelva un valor
         when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuario));
 
-        // Mockeamos el servicio de obtención de todos los equipos para que nos devuelva
-        when(equipoService.findAllOrderedByName()).thenReturn(listaEquipos);
-
-        // Mockeamos el servicio de búsqueda por Id para que nos devuelva el
-        // usuario que acabamos de crear
-        when(usuarioService.findById(usuario.getId())).thenReturn(usuario);
+        // Mockeamos el servicio de listado de equipos del usuario para que nos
+        // devuelva el listado anterior
+        when(equipoService.listadoEquiposUsuario(usuario.getId(), null, null, 51)).thenReturn(listaEquipos);
 
         // WHEN, THEN
         // Realizamos una petición GET: /equipos nos redirecciona a la
@@ -83,26 +83,21 @@ public class EquipoWebTest {
         Usuario usuario = new Usuario("user@ua");
         usuario.setNombre("Usuario Ejemplo");
         usuario.setId(1L);
-        List<Usuario> listaUsuarios = new ArrayList<Usuario>();
-        listaUsuarios.add(usuario);
+        List<MiembroEquipo> listaUsuarios = new ArrayList<MiembroEquipo>();
+        listaUsuarios.add(miembro(usuario.getId(), usuario.getNombre(), usuario.getEmail()));
 
         // Un equipo
         Equipo equipo = new Equipo("Equipo A");
         equipo.setId(1L);
-        equipo.addUsuario(usuario);
 
         // Mockeamos el método usuarioLogeado para que nos devuelva un valor
         when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuario));
 
-        // Mockeamos el servicio de obtención de todos los equipos para que nos devuelva
-        when(equipoService.usuariosEquipo(equipo.getId())).thenReturn(listaUsuarios);
-
-        // Mockeamos el servicio de búsqueda por Id para que nos devuelva el
-        // usuario que acabamos de crear
-        when(usuarioService.findById(usuario.getId())).thenReturn(usuario);
-
-        // Mockeamos el servicio de obtención de un equipo
-        when(equipoService.recuperarEquipo(1L)).thenReturn(equipo);
+        // Mockeamos el servicio que devuelve el equipo con la primera
+        // página de sus miembros
+        when(equipoService.miembrosEquipoPaginados(equipo.getId(), null, 51))
+                .thenReturn(new PaginaMiembrosEquipo(equipo, listaUsuarios, 1));
 
         // WHEN, THEN
         // Realizamos una petición GET: /equipos/{id} nos redirecciona a la
@@ -124,21 +119,16 @@ public class EquipoWebTest {
         usuario.setId(1L);
 
         // Un equipo con el usuario creado como miembro
-        Equipo equipo = new Equipo("Equipo A");
-        usuario.getEquipos().add(equipo);
-
-        List<Equipo> listaEquipos = new ArrayList<Equipo>();
-        listaEquipos.add(equipo);
+        List<EquipoListado> listaEquipos = new ArrayList<EquipoListado>();
+        listaEquipos.add(new EquipoListado(1L, "Equipo A", 1, true));
 
         // Mockeamos el método usuarioLogeado para que nos devuelva un valor
         when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuario));
 
-        // Mockeamos el servicio de obtención de todos los equipos para que nos devuelva
-        when(equipoService.findAllOrderedByName()).thenReturn(listaEquipos);
-
-        // Mockeamos el servicio de búsqueda por Id para que nos devuelva el
-        // usuario que acabamos de crear
-        when(usuarioService.findById(usuario.getId())).thenReturn(usuario);
+        // Mockeamos el servicio de listado de equipos del usuario para que nos
+        // devuelva el listado anterior
+        when(equipoService.listadoEquiposUsuario(usuario.getId(), null, null, 51)).thenReturn(listaEquipos);
 
         // WHEN, THEN
         // Realizamos una petición GET: /equipos nos redirecciona a la
@@ -168,6 +158,7 @@ public class EquipoWebTest {
 
         // Mockeamos el método usuarioLogeado para que nos devuelva un valor
         when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuario));
 
         // Mockeamos el servicio de obtención de todos los equipos para que nos devuelva
         when(equipoService.findAllOrderedByName()).thenReturn(listaEquipos);
@@ -197,6 +188,7 @@ public class EquipoWebTest {
 
         // Mockeamos el método usuarioLogeado para que nos devuelva un valor
         when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuario));
 
         // WHEN, THEN
         // Realizamos una petición GET: /equipos/nuevo nos redirecciona
@@ -226,10 +218,11 @@ public class EquipoWebTest {
 
         // Mockeamos el método usuarioLogeado para que nos devuelva un valor
         when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuario));
 
-        // Mockeamos el servicio de obtención del administrador para 
+        // Mockeamos el servicio de obtención del id del administrador para 
         // que nos devuelva al usuario que acabamos de crea
-        when(usuarioService.findAdmin()).thenReturn(usuario);
+        when(usuarioService.findAdminId()).thenReturn(usuario.getId());
 
         // Mockeamos el servicio de obtención de un equipo
         when(equipoService.recuperarEquipo(1L)).thenReturn(equipo);
@@ -262,10 +255,11 @@ public class EquipoWebTest {
 
         // Mockeamos el método usuarioLogeado para que nos devuelva un valor
         when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuario));
 
-        // Mockeamos el servicio de obtención del administrador para 
+        // Mockeamos el servicio de obtención del id del administrador para 
         // que nos devuelva al usuario que acabamos de crea
-        when(usuarioService.findAdmin()).thenReturn(usuario);
+        when(usuarioService.findAdminId()).thenReturn(usuario.getId());
 
         // Mockeamos el servicio de obtención de un equipo
         when(equipoService.recuperarEquipo(1L)).thenReturn(equipo);
@@ -276,11 +270,32 @@ public class EquipoWebTest {
         // WHEN, THEN
         // Realizamos una petición GET: /equipos/nuevo nos redirecciona
         // a la lista de equipos
-        this.mockMvc.perform(post("/equipos/1/editar"))
+        this.mockMvc.perform(post("/equipos/1/editar")
+                        .param("version", "0"))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrl("/equipos/1"));
     }
 
+    @Test
+    public void servicioModificarEquipoPostSinVersion() throws Exception {
+
+        // GIVEN
+        // Un administrador logeado y un equipo
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setId(1L);
+        Equipo equipo = new Equipo("Equipo A");
+        equipo.setId(1L);
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(usuarioService.findAdminId()).thenReturn(usuario.getId());
+        when(equipoService.recuperarEquipo(1L)).thenReturn(equipo);
+
+        // WHEN, THEN
+        // Una petición POST de edición sin la versión del formulario se rechaza
+        this.mockMvc.perform(post("/equipos/1/editar")
+                        .param("nombre", "MADS"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void servicioListadoEquiposEliminarEquipoOpcion() throws Exception {
 
@@ -292,26 +307,20 @@ public class EquipoWebTest {
         usuario.setIsAdmin(true);
 
         // Un equipo con el usuario creado como miembro
-        Equipo equipo = new Equipo("Equipo A");
-        equipo.setId(1L);
-        usuario.getEquipos().add(equipo);
-
-        List<Equipo> listaEquipos = new ArrayList<Equipo>();
-        listaEquipos.add(equipo);
+        List<EquipoListado> listaEquipos = new ArrayList<EquipoListado>();
+        listaEquipos.add(new EquipoListado(1L, "Equipo A", 1, true));
 
         // Mockeamos el método usuarioLogeado para que nos devuelva un valor
         when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuario));
 
-        // Mockeamos el servicio de obtención de todos los equipos para que nos devuelva
-        when(equipoService.findAllOrderedByName()).thenReturn(listaEquipos);
+        // Mockeamos el servicio de listado de equipos del usuario para que nos
+        // devuelva el listado anterior
+        when(equipoService.listadoEquiposUsuario(usuario.getId(), null, null, 51)).thenReturn(listaEquipos);
 
-        // Mockeamos el servicio de búsqueda por Id para que nos devuelva el
-        // usuario que acabamos de crear
-        when(usuarioService.findById(usuario.getId())).thenReturn(usuario);
-
-        // Mockeamos el servicio de obtención del administrador para 
+        // Mockeamos el servicio de obtención del id del administrador para 
         // que nos devuelva al usuario que acabamos de crea
-        when(usuarioService.findAdmin()).thenReturn(usuario);
+        when(usuarioService.findAdminId()).thenReturn(usuario.getId());
 
         // WHEN, THEN
         // Realizamos una petición GET: /equipos nos redirecciona a la
@@ -324,4 +333,80 @@ public class EquipoWebTest {
                         containsString("X"),
                         containsString("Equipo A")))));
     }
+
+    @Test
+    public void servicioListadoEquiposPaginado() throws Exception {
+
+        // GIVEN
+        // Un usuario con correo e ID
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setNombre("Usuario Ejemplo");
+        usuario.setId(1L);
+
+        // Una página llena de equipos (más el primero de la siguiente)
+        // a partir del equipo "Equipo 0" con id 3
+        List<EquipoListado> listaEquipos = new ArrayList<EquipoListado>();
+        for (long i = 1; i <= 51; i++)
+            listaEquipos.add(new EquipoListado(10 + i, "Equipo " + i, 2, false));
+
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuario));
+        when(equipoService.listadoEquiposUsuario(usuario.getId(), "Equipo 0", 3L, 51)).thenReturn(listaEquipos);
+        when(equipoService.numeroEquipos()).thenReturn(200L);
+
+        // WHEN, THEN
+        // La página muestra 50 equipos con su número de miembros, el total de
+        // equipos y los enlaces a la primera página y a la siguiente, que
+        // empieza después del último equipo mostrado
+        this.mockMvc.perform(get("/equipos?desdeNombre=Equipo 0&desdeId=3"))
+                .andExpect(content().string(allOf(
+                        containsString("Equipo 50"),
+                        not(containsString("Equipo 51")),
+                        containsString("<td>2</td>"),
+                        containsString("200"),
+                        containsString("Primera página"),
+                        containsString("/equipos?desdeNombre=Equipo%2050&amp;desdeId=60"))));
+    }
+
+    @Test
+    public void servicioListadoUsuarioEquiposPaginado() throws Exception {
+
+        // GIVEN
+        // Un usuario logeado y un equipo con más miembros de los que caben
+        // en una página a partir del usuario con id 100
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setNombre("Usuario Ejemplo");
+        usuario.setId(1L);
+
+        Equipo equipo = new Equipo("Equipo A");
+        equipo.setId(1L);
+
+        List<MiembroEquipo> listaUsuarios = new ArrayList<MiembroEquipo>();
+        for (long i = 1; i <= 51; i++)
+            listaUsuarios.add(miembro(100 + i, "Miembro " + i, "miembro" + i + "@ua"));
+
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuario.getId());
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuario));
+        when(equipoService.miembrosEquipoPaginados(equipo.getId(), 100L, 51))
+                .thenReturn(new PaginaMiembrosEquipo(equipo, listaUsuarios, 500));
+
+        // WHEN, THEN
+        // Se muestran 50 miembros, el total de miembros del equipo y los
+        // enlaces a la primera página y a la siguiente
+        this.mockMvc.perform(get("/equipos/1?desde=100"))
+                .andExpect(content().string(allOf(
+                        containsString("miembro50@ua"),
+                        not(containsString("miembro51@ua")),
+                        containsString("500"),
+                        containsString("Primera página"),
+                        containsString("/equipos/1?desde=150"))));
+    }
+
+    private static MiembroEquipo miembro(Long id, String nombre, String email) {
+        return new MiembroEquipo() {
+            public Long getId() { return id; }
+            public String getNombre() { return nombre; }
+            public String getEmail() { return email; }
+        };
+    }
 }
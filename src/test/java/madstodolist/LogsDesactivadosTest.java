@@ -0,0 +1,100 @@
+package madstodolist;
+
+import ch.qos.logback.classic.Level;
+import madstodolist.model.Tarea;
+import madstodolist.model.TareaRepository;
+import madstodolist.model.Usuario;
+import madstodolist.service.TareaService;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.implementation.FixedValue;
+import net.bytebuddy.implementation.StubMethod;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Comprueba que los mensajes de log de los servicios no reservan memoria
+// cuando el nivel debug está desactivado (como en producción). Se arranca
+// la aplicación porque su configuración de Logback (filtros, métricas)
+// influye en el coste de cada llamada.
+@SpringBootTest
+public class LogsDesactivadosTest {
+
+    private final ch.qos.logback.classic.Logger logger =
+            (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(TareaService.class);
+    private Level nivelAnterior;
+
+    @BeforeEach
+    public void desactivarDebug() {
+        nivelAnterior = logger.getLevel();
+        logger.setLevel(Level.INFO);
+    }
+
+    @AfterEach
+    public void restaurarNivel() {
+        logger.setLevel(nivelAnterior);
+    }
+
+    // Repositorio de tareas generado con ByteBuddy (la librería que usa
+    // Mockito) que sólo implementa findById, que siempre devuelve la misma
+    // tarea, y delete, que no hace nada. Sus llamadas no reservan memoria,
+    // así que lo que se mide es el resto del método del servicio, incluidos
+    // sus logs. Un mock de Mockito no sirve: cada invocación guarda la traza
+    // de la llamada (decenas de KB).
+    private static TareaRepository repositorioFijo(Tarea tarea) throws Exception {
+        return new ByteBuddy()
+                .subclass(TareaRepository.class)
+                .method(named("findById")).intercept(FixedValue.value(Optional.of(tarea)))
+                .method(named("delete")).intercept(StubMethod.INSTANCE)
+                .make()
+                .load(LogsDesactivadosTest.class.getClassLoader())
+                .getLoaded()
+                .getDeclaredConstructor()
+                .newInstance();
+    }
+
+    // Métodos reales del servicio (sin el proxy de Spring, cuyas
+    // transacciones y métricas sí reservan memoria) con un log debug cada uno
+    private void llamadasServicio(TareaService tareaService, Long idTarea) {
+        tareaService.findById(idTarea);
+        tareaService.borraTarea(idTarea);
+    }
+
+    @Test
+    public void logsDebugDesactivadosNoReservanMemoria() throws Exception {
+        // GIVEN
+        // Un TareaService sobre el repositorio fijo, el nivel debug
+        // desactivado y las llamadas ya compiladas por el JIT
+        Tarea tarea = new Tarea(new Usuario("user@ua"), "Lavar coche");
+        TareaService tareaService = new TareaService();
+        ReflectionTestUtils.setField(tareaService, "tareaRepository", repositorioFijo(tarea));
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long idHilo = Thread.currentThread().getId();
+        Long idTarea = 654321L;
+        for (int i = 0; i < 200_000; i++)
+            llamadasServicio(tareaService, idTarea);
+        threads.getThreadAllocatedBytes(idHilo);
+
+        // WHEN
+        // Ejecutamos un millón de veces los métodos del servicio
+        long antes = threads.getThreadAllocatedBytes(idHilo);
+        for (int i = 0; i < 1_000_000; i++)
+            llamadasServicio(tareaService, idTarea);
+        long despues = threads.getThreadAllocatedBytes(idHilo);
+
+        // THEN
+        // La memoria reservada es prácticamente nula: menos de un byte por
+        // iteración (la medida y el JIT pueden reservar algunos bytes
+        // sueltos), mientras que cualquier objeto por llamada ocuparía al
+        // menos 16 bytes y construir los mensajes de log decenas de megabytes
+        assertThat(despues - antes).isLessThan(1_000_000);
+    }
+}
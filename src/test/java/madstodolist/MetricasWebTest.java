@@ -0,0 +1,73 @@
+package madstodolist;
+
+import madstodolist.service.EquipoService;
+import madstodolist.service.EquipoServiceException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Spring Boot desactiva la exportación de métricas en los tests
+// salvo que se indique @AutoConfigureMetrics
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+@Sql(scripts = "/clean-db.sql", executionPhase = AFTER_TEST_METHOD)
+public class MetricasWebTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EquipoService equipoService;
+
+    @Test
+    public void prometheusPublicaMetricasDeServiciosRepositoriosHibernateYPool() throws Exception {
+        // GIVEN
+        // Una llamada correcta y otra que lanza una excepción a un servicio
+        equipoService.crearEquipo("Proyecto 1");
+        Assertions.assertThrows(EquipoServiceException.class, () -> {
+            equipoService.crearEquipo("");
+        });
+
+        // WHEN, THEN
+        // El endpoint de Prometheus del actuator incluye los tiempos de cada
+        // método del servicio (separados por excepción), de los repositorios,
+        // las estadísticas de Hibernate y el estado del pool de conexiones
+        this.mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        containsString("madstodolist_service_seconds_count{class=\"EquipoService\",exception=\"none\",method=\"crearEquipo\""),
+                        containsString("madstodolist_service_seconds_count{class=\"EquipoService\",exception=\"EquipoServiceException\",method=\"crearEquipo\""),
+                        containsString("madstodolist_service_seconds_bucket"),
+                        containsString("spring_data_repository_invocations_seconds_count{exception=\"None\",method=\"save\",repository=\"EquipoRepository\""),
+                        containsString("hibernate_sessions_open_total"),
+                        containsString("hikaricp_connections_active"))));
+    }
+
+    @Test
+    public void prometheusPublicaHistogramaDeEsperaPorConexiones() throws Exception {
+        // GIVEN
+        // Una operación que obtiene una conexión del pool
+        equipoService.crearEquipo("Proyecto 1");
+
+        // WHEN, THEN
+        // El tiempo de espera por una conexión se publica como histograma
+        // junto con el número de hilos esperando, identificados por el
+        // nombre del pool
+        this.mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        containsString("hikaricp_connections_acquire_seconds_bucket{pool=\"madstodolist\""),
+                        containsString("hikaricp_connections_pending{pool=\"madstodolist\""))));
+    }
+}
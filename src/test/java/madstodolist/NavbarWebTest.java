@@ -5,20 +5,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
 
 import madstodolist.authentication.ManagerUserSession;
+import madstodolist.authentication.UsuarioSesion;
 import madstodolist.model.Usuario;
 import madstodolist.service.UsuarioService;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.hamcrest.Matchers.*;
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@Sql(scripts = "/clean-db.sql", executionPhase = AFTER_TEST_METHOD)
 public class NavbarWebTest {
 
     @Autowired
@@ -48,6 +52,7 @@ public class NavbarWebTest {
         Long usuarioId = usuario.getId();
 
         when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuarioService.findById(usuarioId)));
 
         String[] urls = { "/usuarios/" + usuarioId.toString() + "/tareas",
                           "/usuarios/" + usuarioId.toString() + "/tareas/nueva",
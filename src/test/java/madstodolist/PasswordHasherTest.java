@@ -0,0 +1,53 @@
+package madstodolist;
+
+import madstodolist.authentication.Pbkdf2PasswordHasher;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PasswordHasherTest {
+
+    @Test
+    public void hashVerificaSoloLaContraseñaCorrecta() {
+        // GIVEN
+        // El hash de una contraseña
+        Pbkdf2PasswordHasher hasher = new Pbkdf2PasswordHasher(1000);
+        String hash = hasher.hash("12345678");
+
+        // THEN
+        // no contiene la contraseña en claro y sólo la verifica a ella
+        assertThat(hash).doesNotContain("12345678");
+        assertThat(hasher.verificar("12345678", hash)).isTrue();
+        assertThat(hasher.verificar("00000000", hash)).isFalse();
+    }
+
+    @Test
+    public void hashesDeLaMismaContraseñaSonDistintos() {
+        // GIVEN
+        // Dos hashes de la misma contraseña
+        Pbkdf2PasswordHasher hasher = new Pbkdf2PasswordHasher(1000);
+
+        // THEN
+        // son distintos porque usan un salt aleatorio
+        assertThat(hasher.hash("12345678")).isNotEqualTo(hasher.hash("12345678"));
+    }
+
+    @Test
+    public void necesitaRehashSiCambiaElCosteOEsTextoPlano() {
+        // GIVEN
+        // Un hash calculado con 1000 iteraciones
+        String hash = new Pbkdf2PasswordHasher(1000).hash("12345678");
+
+        // THEN
+        // el hasher con el mismo coste no necesita recalcularlo,
+        // el hasher con un coste distinto sí, pero lo sigue verificando,
+        Pbkdf2PasswordHasher hasher2000 = new Pbkdf2PasswordHasher(2000);
+        assertThat(new Pbkdf2PasswordHasher(1000).necesitaRehash(hash)).isFalse();
+        assertThat(hasher2000.necesitaRehash(hash)).isTrue();
+        assertThat(hasher2000.verificar("12345678", hash)).isTrue();
+
+        // y una contraseña guardada en claro se verifica y debe recalcularse.
+        assertThat(hasher2000.verificar("123", "123")).isTrue();
+        assertThat(hasher2000.necesitaRehash("123")).isTrue();
+    }
+}
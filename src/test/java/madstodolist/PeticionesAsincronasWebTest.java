@@ -0,0 +1,196 @@
+package madstodolist;
+
+import madstodolist.controller.EjecutorPeticiones;
+import madstodolist.controller.exception.ServidorSaturadoException;
+import madstodolist.model.Usuario;
+import madstodolist.service.TareaService;
+import madstodolist.service.UsuarioService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Modo asíncrono de las peticiones (EjecutorPeticiones). Los handlers
+// devuelven un Callable que se ejecuta en el pool, por lo que cada
+// petición se completa con un asyncDispatch.
+@SpringBootTest(properties = "madstodolist.async.activo=true")
+@AutoConfigureMockMvc
+@Sql(scripts = "/clean-db.sql", executionPhase = AFTER_TEST_METHOD)
+public class PeticionesAsincronasWebTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UsuarioService usuarioService;
+
+    @Autowired
+    private TareaService tareaService;
+
+    @Test
+    public void loginYListadoDeTareasAsincronos() throws Exception {
+        // GIVEN
+        // Un usuario con una tarea
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setPassword("123");
+        usuario = usuarioService.registrar(usuario);
+        tareaService.nuevaTareaUsuario(usuario.getId(), "Lavar coche");
+
+        // WHEN, THEN
+        // Hace login, que se atiende en el hilo del servidor, y se le
+        // redirige a su listado de tareas, que se atiende en el pool y
+        // muestra la tarea
+        MockHttpSession session = new MockHttpSession();
+        this.mockMvc.perform(post("/login")
+                        .param("eMail", "user@ua")
+                        .param("password", "123")
+                        .session(session))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(redirectedUrl("/usuarios/" + usuario.getId() + "/tareas"));
+
+        MvcResult listado = this.mockMvc.perform(get("/usuarios/" + usuario.getId() + "/tareas").session(session))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.mockMvc.perform(asyncDispatch(listado))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("Lavar coche")));
+    }
+
+    @Test
+    public void excepcionesDelHandlerAsincronoDevuelvenSuEstado() throws Exception {
+        // GIVEN
+        // Un usuario sin login
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setPassword("123");
+        usuario = usuarioService.registrar(usuario);
+
+        // WHEN, THEN
+        // El acceso a su listado de tareas devuelve un 401
+        MvcResult listado = this.mockMvc.perform(get("/usuarios/" + usuario.getId() + "/tareas"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.mockMvc.perform(asyncDispatch(listado))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void peticionesQueExcedenElLimiteSeRechazan() throws Exception {
+        // GIVEN
+        // Un ejecutor con un hilo y sin cola
+        EjecutorPeticiones ejecutor = new EjecutorPeticiones(true, 1, 0);
+        try {
+            // WHEN
+            // Se admite una petición
+            Object resultado = ejecutor.ejecutar(() -> "listaTareas");
+
+            // THEN
+            // La siguiente se rechaza hasta que termina la primera
+            assertThat(resultado).isInstanceOf(Callable.class);
+            Assertions.assertThrows(ServidorSaturadoException.class, () -> {
+                ejecutor.ejecutar(() -> "listaTareas");
+            });
+            assertThat(((Callable<?>) resultado).call()).isEqualTo("listaTareas");
+            assertThat(ejecutor.ejecutar(() -> "listaTareas")).isInstanceOf(Callable.class);
+        } finally {
+            ejecutor.cerrar();
+        }
+    }
+
+    // Da acceso a los interceptores que registra EjecutorPeticiones
+    static class Configurador extends AsyncSupportConfigurer {
+        List<CallableProcessingInterceptor> interceptores() {
+            return getCallableInterceptors();
+        }
+    }
+
+    @Test
+    public void timeoutNoLiberaLaPlazaDeUnHandlerEnEjecucion() throws Exception {
+        // GIVEN
+        // Un ejecutor con un hilo y sin cola, y una petición cuyo handler
+        // está en ejecución
+        EjecutorPeticiones ejecutor = new EjecutorPeticiones(true, 1, 0);
+        Configurador configurador = new Configurador();
+        ejecutor.configureAsyncSupport(configurador);
+        CallableProcessingInterceptor interceptor = configurador.interceptores().get(0);
+        CountDownLatch enEjecucion = new CountDownLatch(1);
+        CountDownLatch continuar = new CountDownLatch(1);
+        try {
+            Callable<?> tarea = (Callable<?>) ejecutor.ejecutar(() -> {
+                enEjecucion.countDown();
+                continuar.await();
+                return "listaTareas";
+            });
+            Thread hilo = new Thread(() -> {
+                try {
+                    tarea.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            hilo.start();
+            enEjecucion.await();
+
+            // WHEN
+            // La petición termina por timeout
+            interceptor.afterCompletion(null, tarea);
+
+            // THEN
+            // La plaza sigue ocupada hasta que termina el handler
+            Assertions.assertThrows(ServidorSaturadoException.class, () -> {
+                ejecutor.ejecutar(() -> "listaTareas");
+            });
+            continuar.countDown();
+            hilo.join();
+            assertThat(ejecutor.ejecutar(() -> "listaTareas")).isInstanceOf(Callable.class);
+        } finally {
+            continuar.countDown();
+            ejecutor.cerrar();
+        }
+    }
+
+    @Test
+    public void handlerDeUnaPeticionTerminadaNoSeEjecuta() throws Exception {
+        // GIVEN
+        // Un ejecutor con un hilo y sin cola, y una petición todavía en cola
+        EjecutorPeticiones ejecutor = new EjecutorPeticiones(true, 1, 0);
+        Configurador configurador = new Configurador();
+        ejecutor.configureAsyncSupport(configurador);
+        AtomicBoolean ejecutado = new AtomicBoolean();
+        try {
+            Callable<?> tarea = (Callable<?>) ejecutor.ejecutar(() -> {
+                ejecutado.set(true);
+                return "listaTareas";
+            });
+
+            // WHEN
+            // La petición termina por timeout antes de que empiece el handler
+            configurador.interceptores().get(0).afterCompletion(null, tarea);
+
+            // THEN
+            // La plaza se libera y el handler ya no se ejecuta
+            assertThat(ejecutor.ejecutar(() -> "listaTareas")).isInstanceOf(Callable.class);
+            tarea.call();
+            assertThat(ejecutado.get()).isFalse();
+        } finally {
+            ejecutor.cerrar();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package madstodolist;
+
+import madstodolist.model.Usuario;
+import madstodolist.service.TareaService;
+import madstodolist.service.UsuarioService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit.jupiter.EnabledIf;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+
+// Migración de las secuencias de schema-postgres.sql al arrancar otro nodo
+// sobre la misma base de datos. Sólo se ejecuta con el perfil postgres
+// (./mvnw test -D spring.profiles.active=postgres).
+@SpringBootTest
+@EnabledIf(expression = "#{environment.acceptsProfiles('postgres')}", loadContext = true)
+@Sql(scripts = "/clean-db.sql", executionPhase = AFTER_TEST_METHOD)
+public class SecuenciasPostgresTest {
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    UsuarioService usuarioService;
+
+    @Autowired
+    TareaService tareaService;
+
+    // Ejecuta schema-postgres.sql como al arrancar un nodo
+    private void arrancarNodo() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema-postgres.sql")).execute(dataSource);
+    }
+
+    private Long addUsuarioBD() {
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setPassword("123");
+        return usuarioService.registrar(usuario).getId();
+    }
+
+    @Test
+    public void arrancarOtroNodoNoRetrocedeLaSecuencia() {
+        // GIVEN
+        // Un nodo en marcha que ya ha creado tareas con un bloque de ids
+        arrancarNodo();
+        Long usuarioId = addUsuarioBD();
+        tareaService.nuevaTareaUsuario(usuarioId, "Lavar coche");
+        tareaService.nuevaTareaUsuario(usuarioId, "Renovar DNI");
+        long bloque = jdbcTemplate.queryForObject("select last_value from tareas_seq", Long.class);
+
+        // WHEN
+        // arranca otro nodo sobre la misma base de datos,
+        arrancarNodo();
+
+        // THEN
+        // la secuencia no vuelve al bloque del primer nodo: el siguiente
+        // bloque empieza después de él
+        assertThat(jdbcTemplate.queryForObject("select last_value from tareas_seq", Long.class))
+                .isEqualTo(bloque);
+        assertThat(jdbcTemplate.queryForObject("select nextval('tareas_seq')", Long.class))
+                .isGreaterThanOrEqualTo(bloque + 50);
+    }
+
+    @Test
+    public void arrancarConIdsAntiguosAdelantaLaSecuencia() {
+        // GIVEN
+        // Una tarea con un id por encima de todos los bloques repartidos,
+        // como las creadas con columnas IDENTITY
+        arrancarNodo();
+        Long usuarioId = addUsuarioBD();
+        long idAntiguo = jdbcTemplate.queryForObject("select last_value from tareas_seq", Long.class) + 1000;
+        jdbcTemplate.update("insert into tareas (id, titulo, version, usuario_id) values (?, 'Antigua', 0, ?)",
+                idAntiguo, usuarioId);
+
+        // WHEN
+        // se arranca un nodo,
+        arrancarNodo();
+
+        // THEN
+        // el siguiente bloque empieza después de ese id
+        assertThat(jdbcTemplate.queryForObject("select nextval('tareas_seq')", Long.class))
+                .isGreaterThan(idAntiguo);
+    }
+}
@@ -2,13 +2,31 @@ package madstodolist;
 
 import madstodolist.model.Tarea;
 import madstodolist.model.Usuario;
+import madstodolist.service.ConflictoVersionException;
+import madstodolist.service.ResultadoImportacion;
 import madstodolist.service.TareaService;
+import madstodolist.service.TareaServiceException;
 import madstodolist.service.UsuarioService;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.jdbc.Sql;
 
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
 
@@ -27,6 +45,17 @@ public class TareaServiceTest {
     @Autowired
     TareaService tareaService;
 
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    // Estadísticas de Hibernate (generate_statistics está activado),
+    // puestas a cero
+    Statistics estadisticasHibernate() {
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        return estadisticas;
+    }
+
     class DosIds {
         Long usuarioId;
         Long tareaId;
@@ -59,12 +88,30 @@ public class TareaServiceTest {
         Tarea tarea = tareaService.nuevaTareaUsuario(usuarioId, "Práctica 1 de MADS");
 
         // THEN
-        // al recuperar el usuario usando el método findByEmail la tarea creada
+        // al recuperar las tareas del usuario la tarea creada
         // está en la lista de tareas del usuario.
 
-        Usuario usuario = usuarioService.findByEmail("user@ua");
-        assertThat(usuario.getTareas()).hasSize(3);
-        assertThat(usuario.getTareas()).contains(tarea);
+        List<Tarea> tareas = tareaService.allTareasUsuario(usuarioId);
+        assertThat(tareas).hasSize(3);
+        assertThat(tareas).contains(tarea);
+    }
+
+    @Test
+    public void testNuevaTareaNoCargaLasTareasDelUsuario() {
+        // GIVEN
+        // Un usuario con tareas en la BD
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+        Statistics estadisticas = estadisticasHibernate();
+
+        // WHEN
+        // le añadimos tareas, una a una y en bloque,
+        tareaService.nuevaTareaUsuario(usuarioId, "Práctica 1 de MADS");
+        tareaService.nuevasTareasUsuario(usuarioId, Arrays.asList("Práctica 2", "Práctica 3"));
+
+        // THEN
+        // no se carga la colección con sus tareas anteriores
+        assertThat(estadisticas.getCollectionLoadCount()).isEqualTo(0);
+        assertThat(tareaService.allTareasUsuario(usuarioId)).hasSize(5);
     }
 
     @Test
@@ -107,8 +154,97 @@ public class TareaServiceTest {
         assertThat(tareaBD.getTitulo()).isEqualTo("Limpiar los cristales del coche");
 
         // y el usuario tiene también esa tarea modificada.
-        Usuario usuarioBD = usuarioService.findById(usuarioId);
-        usuarioBD.getTareas().contains(tareaBD);
+        assertThat(tareaService.allTareasUsuario(usuarioId)).contains(tareaBD);
+    }
+
+    @Test
+    public void testModificarTareaConVersionAntiguaLanzaConflicto() {
+        // GIVEN
+        // Una tarea leída por dos usuarios y modificada por el primero
+        Long tareaId = addUsuarioTareasBD().tareaId;
+        Long version = tareaService.findById(tareaId).getVersion();
+        Tarea modificada = tareaService.modificaTarea(tareaId, "Lavar coche hoy", version);
+        assertThat(modificada.getVersion()).isEqualTo(version + 1);
+
+        // WHEN, THEN
+        // la modificación del segundo usuario, hecha sobre la versión que
+        // leyó, lanza una excepción y no sobrescribe la del primero
+        Assertions.assertThrows(ConflictoVersionException.class, () -> {
+            tareaService.modificaTarea(tareaId, "Lavar coche mañana", version);
+        });
+        assertThat(tareaService.findById(tareaId).getTitulo()).isEqualTo("Lavar coche hoy");
+    }
+
+    // Ejecuta 'tarea' en 'numHilos' hilos a la vez y devuelve cuántas
+    // ejecuciones lanzan ConflictoVersionException
+    private int ejecutarEnParalelo(int numHilos, Runnable tarea) throws Exception {
+        ExecutorService hilos = Executors.newFixedThreadPool(numHilos);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> resultados = new ArrayList<>();
+        for (int i = 0; i < numHilos; i++) {
+            resultados.add(hilos.submit(() -> {
+                salida.await();
+                tarea.run();
+                return null;
+            }));
+        }
+        salida.countDown();
+        int conflictos = 0;
+        try {
+            for (Future<?> resultado : resultados) {
+                try {
+                    resultado.get(60, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof ConflictoVersionException))
+                        throw e;
+                    conflictos++;
+                }
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+        return conflictos;
+    }
+
+    @Test
+    public void testModificacionesConcurrentesDeUnaTareaNoSePierden() throws Exception {
+        // GIVEN
+        // Una tarea en la BD
+        Long tareaId = addUsuarioTareasBD().tareaId;
+        Long versionInicial = tareaService.findById(tareaId).getVersion();
+
+        // WHEN
+        // 8 hilos la modifican 25 veces cada uno a la vez
+        int conflictos = ejecutarEnParalelo(8, () -> {
+            for (int i = 0; i < 25; i++)
+                tareaService.modificaTarea(tareaId, Thread.currentThread().getName() + " " + i);
+        });
+
+        // THEN
+        // todas las modificaciones se guardan (los conflictos se resuelven
+        // repitiendo la modificación): la versión ha aumentado una vez por
+        // cada una
+        assertThat(conflictos).isEqualTo(0);
+        assertThat(tareaService.findById(tareaId).getVersion()).isEqualTo(versionInicial + 200);
+    }
+
+    @Test
+    public void testModificacionesConcurrentesSobreLaMismaVersionSoloGuardanUna() throws Exception {
+        // GIVEN
+        // Una tarea leída por 8 usuarios
+        Long tareaId = addUsuarioTareasBD().tareaId;
+        Long version = tareaService.findById(tareaId).getVersion();
+
+        // WHEN
+        // todos la modifican a la vez a partir de la versión leída
+        int conflictos = ejecutarEnParalelo(8, () -> {
+            tareaService.modificaTarea(tareaId, Thread.currentThread().getName(), version);
+        });
+
+        // THEN
+        // sólo se guarda una modificación y el resto recibe un conflicto
+        assertThat(conflictos).isEqualTo(7);
+        assertThat(tareaService.findById(tareaId).getVersion()).isEqualTo(version + 1);
     }
 
     @Test
@@ -129,6 +265,219 @@ public class TareaServiceTest {
         // la tarea ya no está en la base de datos ni en las tareas del usuario.
 
         assertThat(tareaService.findById(tareaId)).isNull();
-        assertThat(usuarioService.findById(usuarioId).getTareas()).hasSize(1);
+        assertThat(tareaService.allTareasUsuario(usuarioId)).hasSize(1);
+    }
+
+    @Test
+    public void testTareasUsuarioPaginadas() {
+        // GIVEN
+        // Un usuario con dos tareas en la BD y una tercera añadida
+
+        DosIds dosIds = addUsuarioTareasBD();
+        Long usuarioId = dosIds.usuarioId;
+        Tarea tarea3 = tareaService.nuevaTareaUsuario(usuarioId, "Práctica 1 de MADS");
+
+        // WHEN
+        // pedimos la primera página de dos tareas y la siguiente a partir
+        // de la última tarea devuelta,
+
+        List<Tarea> pagina1 = tareaService.tareasUsuarioPaginadas(usuarioId, null, 2);
+        List<Tarea> pagina2 = tareaService.tareasUsuarioPaginadas(usuarioId, pagina1.get(1).getId(), 2);
+
+        // THEN
+        // las páginas contienen las tareas ordenadas por id.
+
+        assertThat(pagina1).hasSize(2);
+        assertThat(pagina1.get(0).getId()).isEqualTo(dosIds.tareaId);
+        assertThat(pagina1.get(1).getTitulo()).isEqualTo("Renovar DNI");
+        assertThat(pagina2).hasSize(1);
+        assertThat(pagina2.get(0).getId()).isEqualTo(tarea3.getId());
+    }
+
+    @Test
+    public void testBuscarTareasUsuario() {
+        // GIVEN
+        // Un usuario con dos tareas en la BD y otras tres añadidas,
+        // y otro usuario con una tarea que también coincide
+
+        DosIds dosIds = addUsuarioTareasBD();
+        Long usuarioId = dosIds.usuarioId;
+        Tarea lavarPerro = tareaService.nuevaTareaUsuario(usuarioId, "LAVAR perro");
+        Tarea lavarRopa = tareaService.nuevaTareaUsuario(usuarioId, "Poner a lavar la ropa");
+        tareaService.nuevaTareaUsuario(usuarioId, "Subir nota al 100%");
+        Usuario otro = new Usuario("otro@ua");
+        otro.setPassword("123");
+        otro = usuarioService.registrar(otro);
+        tareaService.nuevaTareaUsuario(otro.getId(), "Lavar moto");
+
+        // WHEN
+        // buscamos "lavar" en páginas de dos tareas, y buscamos textos
+        // con comodines de LIKE,
+
+        List<Tarea> pagina1 = tareaService.buscarTareasUsuario(usuarioId, "lavar", null, 2);
+        List<Tarea> pagina2 = tareaService.buscarTareasUsuario(usuarioId, "lavar", pagina1.get(1).getId(), 2);
+        List<Tarea> porcentaje = tareaService.buscarTareasUsuario(usuarioId, "100%", null, 10);
+        List<Tarea> guionBajo = tareaService.buscarTareasUsuario(usuarioId, "_", null, 10);
+
+        // THEN
+        // sólo se devuelven tareas del usuario que contienen el texto sin
+        // distinguir mayúsculas, ordenadas por id, y los comodines se
+        // buscan literalmente.
+
+        assertThat(pagina1).extracting(Tarea::getId).containsExactly(dosIds.tareaId, lavarPerro.getId());
+        assertThat(pagina2).extracting(Tarea::getId).containsExactly(lavarRopa.getId());
+        assertThat(porcentaje).extracting(Tarea::getTitulo).containsExactly("Subir nota al 100%");
+        assertThat(guionBajo).isEmpty();
+    }
+
+    @Test
+    public void testTareasUsuarioNoSeCarganAlRecuperarUsuario() {
+        // GIVEN
+        // Un usuario con dos tareas en la BD
+
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+
+        // WHEN
+        // recuperamos el usuario por su id,
+
+        Usuario usuario = usuarioService.findById(usuarioId);
+
+        // THEN
+        // sus tareas no se han cargado, porque la relación es LAZY.
+
+        assertThat(Hibernate.isInitialized(usuario.getTareas())).isFalse();
+    }
+
+    @Test
+    public void testNuevasTareasUsuario() {
+        // GIVEN
+        // Un usuario con dos tareas en la BD
+
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+
+        // WHEN
+        // añadimos varias tareas de una vez,
+
+        List<Tarea> nuevas = tareaService.nuevasTareasUsuario(usuarioId,
+                Arrays.asList("Práctica 1 de MADS", "Práctica 2 de MADS", "Práctica 3 de MADS"));
+
+        // THEN
+        // todas tienen id y están en la lista de tareas del usuario.
+
+        assertThat(nuevas).hasSize(3);
+        assertThat(nuevas).allMatch(tarea -> tarea.getId() != null);
+        List<Tarea> tareas = tareaService.allTareasUsuario(usuarioId);
+        assertThat(tareas).hasSize(5);
+        assertThat(tareas).containsAll(nuevas);
+    }
+
+    @Test
+    public void testNuevasTareasUsuarioInsertaEnLotes() {
+        // GIVEN
+        // Un usuario con dos tareas en la BD
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+        List<String> titulos = new ArrayList<>();
+        for (int i = 0; i < 120; i++)
+            titulos.add("Tarea " + i);
+        Statistics estadisticas = estadisticasHibernate();
+
+        // WHEN
+        // añadimos 120 tareas de una vez,
+        tareaService.nuevasTareasUsuario(usuarioId, titulos);
+
+        // THEN
+        // se insertan en tres lotes de como mucho 50 tareas: cada lote
+        // prepara una única sentencia, más las consultas a la secuencia
+        // (bloques de 50 ids) y la lectura del usuario, en lugar de una
+        // sentencia por tarea.
+        assertThat(estadisticas.getEntityInsertCount()).isEqualTo(120);
+        assertThat(estadisticas.getPrepareStatementCount()).isLessThanOrEqualTo(8);
+    }
+
+    @Test
+    public void testNuevasTareasUsuarioNoExistente() {
+        // WHEN, THEN
+        // añadir tareas a un usuario inexistente lanza una excepción.
+
+        Assertions.assertThrows(TareaServiceException.class, () -> {
+            tareaService.nuevasTareasUsuario(1L, Arrays.asList("Lavar coche"));
+        });
+    }
+
+    @Test
+    public void testImportarTareasUsuarioEnLotes() {
+        // GIVEN
+        // Un usuario con dos tareas en la BD
+
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+
+        // WHEN
+        // importamos cinco títulos, uno de ellos vacío, en lotes de dos,
+
+        List<String> titulos = Arrays.asList("Tarea 1", "Tarea 2", "", "Tarea 3", "Tarea 4");
+        ResultadoImportacion resultado = tareaService.importarTareasUsuario(usuarioId, titulos.iterator(), 2);
+
+        // THEN
+        // se importan cuatro tareas en dos lotes y se omite el título vacío.
+
+        assertThat(resultado.getImportadas()).isEqualTo(4);
+        assertThat(resultado.getLotes()).isEqualTo(2);
+        assertThat(resultado.getOmitidas()).isEqualTo(1);
+        assertThat(tareaService.allTareasUsuario(usuarioId)).hasSize(6);
+    }
+
+    // Importa 'numLotes' lotes de 50 tareas y devuelve el número de
+    // sentencias JDBC preparadas
+    private long sentenciasImportacion(Long usuarioId, int numLotes) {
+        List<String> titulos = new ArrayList<>();
+        for (int i = 0; i < numLotes * 50; i++)
+            titulos.add("Tarea " + i);
+        Statistics estadisticas = estadisticasHibernate();
+        tareaService.importarTareasUsuario(usuarioId, titulos.iterator(), 50);
+
+        // Ningún lote lee el usuario ni carga sus tareas
+        assertThat(estadisticas.getEntityLoadCount()).isEqualTo(0);
+        assertThat(estadisticas.getCollectionLoadCount()).isEqualTo(0);
+        return estadisticas.getPrepareStatementCount();
+    }
+
+    @Test
+    public void testImportarTareasUsuarioCosteConstantePorLote() {
+        // GIVEN
+        // Un usuario con dos tareas en la BD
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+
+        // WHEN
+        // importamos uno, dos y tres lotes sucesivamente,
+        long sentenciasUnLote = sentenciasImportacion(usuarioId, 1);
+        long sentenciasDosLotes = sentenciasImportacion(usuarioId, 2);
+        long sentenciasTresLotes = sentenciasImportacion(usuarioId, 3);
+
+        // THEN
+        // cada lote más cuesta lo mismo aunque el usuario tenga cada vez
+        // más tareas
+        assertThat(sentenciasTresLotes - sentenciasDosLotes)
+                .isEqualTo(sentenciasDosLotes - sentenciasUnLote);
+        assertThat(tareaService.allTareasUsuario(usuarioId)).hasSize(302);
+    }
+
+    @Test
+    public void testExportarTareasUsuario() {
+        // GIVEN
+        // Un usuario con dos tareas en la BD
+
+        DosIds dosIds = addUsuarioTareasBD();
+
+        // WHEN
+        // exportamos sus tareas,
+
+        List<String> titulos = new ArrayList<>();
+        long total = tareaService.exportarTareasUsuario(dosIds.usuarioId, tarea -> titulos.add(tarea.getTitulo()));
+
+        // THEN
+        // se recorren todas las tareas ordenadas por id.
+
+        assertThat(total).isEqualTo(2);
+        assertThat(titulos).containsExactly("Lavar coche", "Renovar DNI");
     }
 }
@@ -1,6 +1,7 @@
 package madstodolist;
 
 import madstodolist.authentication.ManagerUserSession;
+import madstodolist.authentication.UsuarioSesion;
 import madstodolist.model.Tarea;
 import madstodolist.model.Usuario;
 import madstodolist.service.TareaService;
@@ -13,6 +14,10 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
@@ -69,6 +74,7 @@ public class TareaWebTest {
         // que salte la excepción de que el usuario que está haciendo la
         // petición no está logeado.
         when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuarioService.findById(usuarioId)));
 
         // WHEN, THEN
         // se realiza la petición GET al listado de tareas del usuario,
@@ -91,6 +97,7 @@ public class TareaWebTest {
 
         // Ver el comentario en el primer test
         when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuarioService.findById(usuarioId)));
 
         // WHEN, THEN
         // si ejecutamos una petición GET para crear una nueva tarea de un usuario,
@@ -115,6 +122,7 @@ public class TareaWebTest {
 
         // Ver el comentario en el primer test
         when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuarioService.findById(usuarioId)));
 
         // WHEN, THEN
         // realizamos la petición POST para añadir una nueva tarea,
@@ -146,6 +154,7 @@ public class TareaWebTest {
 
         // Ver el comentario en el primer test
         when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuarioService.findById(usuarioId)));
 
         // WHEN, THEN
         // realizamos la petición DELETE para borrar una tarea,
@@ -176,6 +185,7 @@ public class TareaWebTest {
 
         // Ver el comentario en el primer test
         when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuarioService.findById(usuarioId)));
 
         // WHEN, THEN
         // realizamos una petición POST al endpoint para editar una tarea
@@ -184,7 +194,8 @@ public class TareaWebTest {
         String urlRedirect = "/usuarios/" + usuarioId + "/tareas";
 
         this.mockMvc.perform(post(urlEditar)
-                        .param("titulo", "Limpiar cristales coche"))
+                        .param("titulo", "Limpiar cristales coche")
+                        .param("version", tareaService.findById(tareaLavarCocheId).getVersion().toString()))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrl(urlRedirect));
 
@@ -196,4 +207,303 @@ public class TareaWebTest {
         this.mockMvc.perform(get(urlListado))
                 .andExpect(content().string(containsString("Limpiar cristales coche")));
     }
+
+    @Test
+    public void editarTareaSinVersionDevuelveBadRequest() throws Exception {
+        // GIVEN
+        // Un usuario con dos tareas en la BD
+        DosIds dosIds = addUsuarioTareasBD();
+        when(managerUserSession.usuarioLogeado()).thenReturn(dosIds.usuarioId);
+
+        // WHEN, THEN
+        // una petición POST de edición sin la versión del formulario se
+        // rechaza y la tarea no se modifica
+        this.mockMvc.perform(post("/tareas/" + dosIds.tareaId + "/editar")
+                        .param("titulo", "Limpiar cristales coche"))
+                .andExpect(status().isBadRequest());
+        assertThat(tareaService.findById(dosIds.tareaId).getTitulo()).isEqualTo("Lavar coche");
+    }
+
+    @Test
+    public void editarTareaConVersionAntiguaDevuelveConflicto() throws Exception {
+        // GIVEN
+        // Una tarea modificada por otro usuario después de mostrar el formulario
+        DosIds dosIds = addUsuarioTareasBD();
+        Long usuarioId = dosIds.usuarioId;
+        Long tareaId = dosIds.tareaId;
+        Long version = tareaService.findById(tareaId).getVersion();
+        tareaService.modificaTarea(tareaId, "Lavar coche hoy");
+
+        // Ver el comentario en el primer test
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuarioService.findById(usuarioId)));
+
+        // WHEN, THEN
+        // el formulario enviado con la versión que se mostró devuelve un 409
+        // y la tarea conserva la modificación del otro usuario
+        this.mockMvc.perform(post("/tareas/" + tareaId + "/editar")
+                        .param("titulo", "Limpiar cristales coche")
+                        .param("version", version.toString()))
+                .andExpect(status().isConflict());
+
+        assertThat(tareaService.findById(tareaId).getTitulo()).isEqualTo("Lavar coche hoy");
+    }
+
+    @Test
+    public void listaTareasPaginada() throws Exception {
+        // GIVEN
+        // Un usuario con más tareas de las que caben en una página
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+        Long penultimaId = null;
+        for (int i = 0; i < 20; i++) {
+            Long id = tareaService.nuevaTareaUsuario(usuarioId, "Tarea " + i).getId();
+            if (i == 18)
+                penultimaId = id;
+        }
+
+        // Ver el comentario en el primer test
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuarioService.findById(usuarioId)));
+
+        // WHEN, THEN
+        // la primera página no contiene la última tarea e incluye
+        // el enlace a la página siguiente,
+
+        String url = "/usuarios/" + usuarioId + "/tareas";
+
+        this.mockMvc.perform(get(url))
+                .andExpect(content().string(allOf(
+                        containsString("Lavar coche"),
+                        containsString("Siguiente"),
+                        not(containsString("Tarea 19")))));
+
+        // y la segunda página contiene la última tarea y no tiene siguiente.
+
+        this.mockMvc.perform(get(url).param("desde", penultimaId.toString()))
+                .andExpect(content().string(allOf(
+                        containsString("Tarea 19"),
+                        containsString("Primera página"),
+                        not(containsString("Siguiente")),
+                        not(containsString("Lavar coche")))));
+    }
+
+    @Test
+    public void listaTareasBusqueda() throws Exception {
+        // GIVEN
+        // Un usuario con más tareas que contienen "lavar" de las que caben
+        // en una página
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+        Long penultimaId = null;
+        for (int i = 0; i < 20; i++) {
+            Long id = tareaService.nuevaTareaUsuario(usuarioId, "Lavar " + i).getId();
+            if (i == 18)
+                penultimaId = id;
+        }
+
+        // Ver el comentario en el primer test
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuarioService.findById(usuarioId)));
+
+        // WHEN, THEN
+        // la búsqueda sólo muestra las tareas que coinciden, mantiene el
+        // texto buscado en el formulario y en el enlace a la página siguiente
+
+        String url = "/usuarios/" + usuarioId + "/tareas";
+
+        this.mockMvc.perform(get(url).param("q", "lavar"))
+                .andExpect(content().string(allOf(
+                        containsString("Lavar coche"),
+                        not(containsString("Renovar DNI")),
+                        containsString("value=\"lavar\""),
+                        containsString("q=lavar"),
+                        containsString("Siguiente"))));
+
+        // Sin búsqueda los enlaces de paginación no llevan el parámetro q
+
+        this.mockMvc.perform(get(url))
+                .andExpect(content().string(not(containsString("q="))));
+
+        // y la última página contiene la última tarea que coincide.
+
+        this.mockMvc.perform(get(url).param("q", "lavar").param("desde", penultimaId.toString()))
+                .andExpect(content().string(allOf(
+                        containsString("Lavar 19"),
+                        not(containsString("Siguiente")))));
+    }
+
+    @Test
+    public void importarTareasCsv() throws Exception {
+        // GIVEN
+        // Un usuario con dos tareas en la BD
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+
+        // Ver el comentario en el primer test
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(usuarioService.findById(usuarioId)));
+
+        // WHEN, THEN
+        // importamos un CSV con cabecera y dos tareas, una de ellas con comillas,
+        // se devuelve el número de tareas importadas
+
+        String urlImportar = "/usuarios/" + usuarioId + "/tareas/importar";
+
+        this.mockMvc.perform(post(urlImportar)
+                        .contentType("text/csv")
+                        .content("titulo,prioridad\nEstudiar examen MADS,alta\n\"Comprar pan, leche\",baja\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.importadas").value(2));
+
+        // y las tareas aparecen en el listado.
+
+        this.mockMvc.perform(get("/usuarios/" + usuarioId + "/tareas"))
+                .andExpect(content().string(allOf(
+                        containsString("Estudiar examen MADS"),
+                        containsString("Comprar pan, leche"))));
+    }
+
+    @Test
+    public void importarCsvConErrorIndicaLasTareasYaImportadas() throws Exception {
+        // GIVEN
+        // Un usuario con dos tareas en la BD y un CSV con 600 tareas
+        // seguidas de una fila con comillas sin cerrar
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+        StringBuilder csv = new StringBuilder("titulo\n");
+        for (int i = 0; i < 600; i++)
+            csv.append("Tarea ").append(i).append('\n');
+        csv.append("\"Sin cerrar\n");
+
+        // Ver el comentario en el primer test
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+
+        // WHEN, THEN
+        // importamos el CSV, se devuelve un error de petición incorrecta con
+        // la línea del error y las 500 tareas ya guardadas en el primer lote
+
+        this.mockMvc.perform(post("/usuarios/" + usuarioId + "/tareas/importar")
+                        .contentType("text/csv")
+                        .content(csv.toString()))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value(containsString("línea 602")))
+                .andExpect(jsonPath("$.importadas").value(500))
+                .andExpect(jsonPath("$.lotes").value(1));
+
+        // y esas tareas están en la BD.
+
+        assertThat(tareaService.exportarTareasUsuario(usuarioId, tarea -> { }))
+                .isEqualTo(2 + 500);
+    }
+
+    @Test
+    public void importarTareasJson() throws Exception {
+        // GIVEN
+        // Un usuario con dos tareas en la BD
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+
+        // Ver el comentario en el primer test
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+
+        // WHEN, THEN
+        // importamos un array JSON con un título y un objeto,
+        // se devuelve el número de tareas importadas
+
+        String urlImportar = "/usuarios/" + usuarioId + "/tareas/importar";
+
+        this.mockMvc.perform(post(urlImportar)
+                        .contentType("application/json")
+                        .content("[\"Estudiar examen MADS\", {\"titulo\": \"Renovar pasaporte\", \"otro\": [1, 2]}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.importadas").value(2))
+                .andExpect(jsonPath("$.lotes").value(1));
+
+        // y un JSON mal formado devuelve un error de petición incorrecta.
+
+        this.mockMvc.perform(post(urlImportar)
+                        .contentType("application/json")
+                        .content("[{\"nombre\": \"Sin titulo\"}]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void exportarTareasCsvYNdjson() throws Exception {
+        // GIVEN
+        // Un usuario con dos tareas en la BD, una de ellas con una coma
+        DosIds dosIds = addUsuarioTareasBD();
+        Long usuarioId = dosIds.usuarioId;
+        Long tareaId = tareaService.nuevaTareaUsuario(usuarioId, "Comprar pan, leche").getId();
+
+        // Ver el comentario en el primer test
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+
+        // WHEN, THEN
+        // exportamos las tareas en CSV, se devuelven con cabecera
+        // y el título con coma entre comillas,
+
+        String urlExportar = "/usuarios/" + usuarioId + "/tareas/exportar";
+
+        this.mockMvc.perform(get(urlExportar))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(content().string(allOf(
+                        startsWith("id,titulo\n" + dosIds.tareaId + ",Lavar coche\n"),
+                        containsString(tareaId + ",\"Comprar pan, leche\"\n"))));
+
+        // y en NDJSON se devuelve un objeto por línea.
+
+        this.mockMvc.perform(get(urlExportar).param("formato", "ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        startsWith("{\"id\":" + dosIds.tareaId + ",\"titulo\":\"Lavar coche\"}\n"),
+                        containsString("\"titulo\":\"Comprar pan, leche\"}\n"))));
+    }
+
+    @Test
+    public void exportarEImportarCsvConservaLosTitulos() throws Exception {
+        // GIVEN
+        // Un usuario con tareas cuyos títulos tienen comas, comillas y
+        // saltos de línea, y otro usuario sin tareas
+        Long usuarioId = addUsuarioTareasBD().usuarioId;
+        tareaService.nuevaTareaUsuario(usuarioId, "Comprar pan, leche");
+        tareaService.nuevaTareaUsuario(usuarioId, "Leer \"El Quijote\"");
+        tareaService.nuevaTareaUsuario(usuarioId, "Preparar examen:\r\n- tema 1\n- tema 2");
+        Usuario otro = new Usuario("otro@ua");
+        otro.setPassword("123");
+        Long otroId = usuarioService.registrar(otro).getId();
+
+        // Ver el comentario en el primer test
+        when(managerUserSession.usuarioLogeado()).thenReturn(otroId);
+
+        // WHEN, THEN
+        // exportamos las tareas del usuario sin tareas, se devuelve sólo la cabecera,
+
+        this.mockMvc.perform(get("/usuarios/" + otroId + "/tareas/exportar"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("id,titulo\n"));
+
+        // WHEN
+        // exportamos en CSV las tareas del primer usuario e importamos
+        // el fichero en el otro usuario,
+
+        when(managerUserSession.usuarioLogeado()).thenReturn(usuarioId);
+        String csv = this.mockMvc.perform(get("/usuarios/" + usuarioId + "/tareas/exportar"))
+                .andReturn().getResponse().getContentAsString();
+
+        when(managerUserSession.usuarioLogeado()).thenReturn(otroId);
+        this.mockMvc.perform(post("/usuarios/" + otroId + "/tareas/importar")
+                        .contentType("text/csv")
+                        .content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.importadas").value(5));
+
+        // THEN
+        // el otro usuario tiene las mismas tareas, con los títulos intactos.
+
+        List<String> titulos = new ArrayList<>();
+        tareaService.exportarTareasUsuario(otroId, tarea -> titulos.add(tarea.getTitulo()));
+        assertThat(titulos).containsExactly(
+                "Lavar coche",
+                "Renovar DNI",
+                "Comprar pan, leche",
+                "Leer \"El Quijote\"",
+                "Preparar examen:\r\n- tema 1\n- tema 2");
+    }
 }
@@ -1,12 +1,20 @@
 package madstodolist;
 
 import madstodolist.model.Usuario;
+import madstodolist.model.UsuarioRepository;
+import madstodolist.model.UsuarioResumen;
+import madstodolist.service.ResultadoLogin;
 import madstodolist.service.UsuarioService;
 import madstodolist.service.UsuarioServiceException;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.data.domain.Page;
 import org.springframework.test.context.jdbc.Sql;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -19,6 +27,19 @@ public class UsuarioServiceTest {
     @Autowired
     private UsuarioService usuarioService;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    // El script de limpieza borra los usuarios sin pasar por el servicio,
+    // por lo que vaciamos también la caché del administrador
+    @AfterEach
+    public void limpiarCacheAdmin() {
+        cacheManager.getCache("admin").clear();
+    }
+
     // Método para inicializar los datos de prueba en la BD
     // Devuelve el identificador del usuario de la BD
     Long addUsuarioBD() {
@@ -123,6 +144,24 @@ public class UsuarioServiceTest {
         });
     }
 
+    @Test
+    public void servicioRegistroUsuarioOtraViolacionNoEsEmailRepetido() {
+        // GIVEN
+        // Un usuario con un e-mail más largo que la columna de la BD
+        StringBuilder email = new StringBuilder();
+        for (int i = 0; i < 300; i++)
+            email.append('a');
+        Usuario usuario = new Usuario(email.append("@ua").toString());
+        usuario.setPassword("12345678");
+
+        // WHEN, THEN
+        // si lo registramos, la excepción de la BD no se confunde con un
+        // e-mail ya registrado
+        Assertions.assertThrows(DataIntegrityViolationException.class, () -> {
+            usuarioService.registrar(usuario);
+        });
+    }
+
     @Test
     public void servicioRegistroUsuarioDevuelveUsuarioConId() {
         // GIVEN
@@ -188,6 +227,46 @@ public class UsuarioServiceTest {
         assertThat(usuarios).hasSize(2);
     }
 
+    @Test
+    public void servicioDirectorioUsuariosPaginadoOrdenadoYFiltrado() {
+        // GIVEN
+        // Cuatro usuarios registrados
+        String[][] datos = {{"ana@ua", "Zoe"}, {"bea@ua", "Ana"}, {"carlos@ua", "Carlos"}, {"dani@ua", "Ana María"}};
+        for (String[] dato : datos) {
+            Usuario usuario = new Usuario(dato[0]);
+            usuario.setNombre(dato[1]);
+            usuario.setPassword("123");
+            usuarioService.registrar(usuario);
+        }
+
+        // WHEN
+        // Recuperamos páginas del listado ordenado por email, por nombre
+        // descendente y filtrado por el prefijo "an"/"Ana"
+        Page<UsuarioResumen> porEmail = usuarioService.directorioUsuarios("", "email", false, 1, 3);
+        Page<UsuarioResumen> porNombre = usuarioService.directorioUsuarios(null, "nombre", true, 0, 2);
+        Page<UsuarioResumen> prefijoEmail = usuarioService.directorioUsuarios("an", "email", false, 0, 10);
+        Page<UsuarioResumen> prefijoNombre = usuarioService.directorioUsuarios("Ana", "email", false, 0, 10);
+
+        // THEN
+        // Las páginas respetan el orden, el tamaño y el filtro por email o nombre
+        assertThat(porEmail.getTotalElements()).isEqualTo(4);
+        assertThat(porEmail.getTotalPages()).isEqualTo(2);
+        assertThat(porEmail.getContent()).extracting(UsuarioResumen::getEmail).containsExactly("dani@ua");
+        assertThat(porNombre.getContent()).extracting(UsuarioResumen::getNombre).containsExactly("Zoe", "Carlos");
+        assertThat(prefijoEmail.getContent()).extracting(UsuarioResumen::getEmail).containsExactly("ana@ua");
+        assertThat(prefijoNombre.getContent()).extracting(UsuarioResumen::getEmail)
+                .containsExactly("bea@ua", "dani@ua");
+    }
+
+    @Test
+    public void servicioDirectorioUsuariosOrdenNoValido() {
+        // WHEN, THEN
+        // Ordenar el listado por un campo no permitido lanza una excepción
+        Assertions.assertThrows(UsuarioServiceException.class, () -> {
+            usuarioService.directorioUsuarios("", "password", false, 0, 10);
+        });
+    }
+
     @Test
     public void servicioRegistroUsuarioAdmin() {
         
@@ -246,4 +325,111 @@ public class UsuarioServiceTest {
         // Intentamos obtener al administrador recibimos null
         assertThat(usuarioService.findAdmin()).isNull();
     }    
+
+    @Test
+    public void servicioIdAdminSeGuardaEnCache() {
+
+        // GIVEN
+        // Un usuario administrador registrado
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setPassword("12345678");
+        usuario.setIsAdmin(true);
+        usuarioService.registrar(usuario);
+
+        // WHEN
+        // Obtenemos el id del administrador
+        Long idAdmin = usuarioService.findAdminId();
+
+        // THEN
+        // Es el id del usuario registrado y queda guardado en la caché
+        assertThat(idAdmin).isEqualTo(usuario.getId());
+        assertThat(cacheManager.getCache("admin").get(SimpleKey.EMPTY, Long.class))
+                .isEqualTo(usuario.getId());
+    }
+
+    @Test
+    public void servicioIdAdminInexistenteNoSeGuardaEnCache() {
+
+        // WHEN
+        // Pedimos el id del administrador sin que exista
+        Long idAdmin = usuarioService.findAdminId();
+
+        // THEN
+        // Se devuelve null y no se guarda en la caché, de forma que
+        // un administrador registrado después se encuentra
+        assertThat(idAdmin).isNull();
+
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setPassword("12345678");
+        usuario.setIsAdmin(true);
+        usuarioService.registrar(usuario);
+
+        assertThat(usuarioService.findAdminId()).isEqualTo(usuario.getId());
+    }
+
+    @Test
+    public void servicioAutenticarDevuelveDatosUsuario() {
+        // GIVEN
+        // Un usuario en la BD
+
+        Long usuarioId = addUsuarioBD();
+
+        // WHEN
+        // nos autenticamos con el usuario y contraseña correctos y con
+        // una contraseña incorrecta,
+
+        ResultadoLogin resultadoOk = usuarioService.autenticar("user@ua", "123");
+        ResultadoLogin resultadoError = usuarioService.autenticar("user@ua", "000");
+
+        // THEN
+        // el primer resultado contiene el id y el nombre del usuario
+        // y el segundo sólo el error.
+
+        assertThat(resultadoOk.getStatus()).isEqualTo(UsuarioService.LoginStatus.LOGIN_OK);
+        assertThat(resultadoOk.getIdUsuario()).isEqualTo(usuarioId);
+        assertThat(resultadoOk.getNombre()).isEqualTo("Usuario Ejemplo");
+        assertThat(resultadoError.getStatus()).isEqualTo(UsuarioService.LoginStatus.ERROR_PASSWORD);
+        assertThat(resultadoError.getIdUsuario()).isNull();
+    }
+
+    @Test
+    public void servicioRegistroGuardaHashDeLaContraseña() {
+        // GIVEN
+        // Un usuario registrado con contraseña "123"
+
+        Long usuarioId = addUsuarioBD();
+
+        // WHEN
+        // recuperamos el usuario de la BD,
+
+        Usuario usuario = usuarioService.findById(usuarioId);
+
+        // THEN
+        // la contraseña no está guardada en claro pero el login funciona.
+
+        assertThat(usuario.getPassword()).isNotEqualTo("123");
+        assertThat(usuarioService.login("user@ua", "123")).isEqualTo(UsuarioService.LoginStatus.LOGIN_OK);
+    }
+
+    @Test
+    public void servicioLoginRecalculaContraseñaEnClaro() {
+        // GIVEN
+        // Un usuario guardado con la contraseña en claro (anterior a los hashes)
+
+        Usuario usuario = new Usuario("user@ua");
+        usuario.setPassword("123");
+        usuario = usuarioRepository.save(usuario);
+
+        // WHEN
+        // hace login correctamente,
+
+        UsuarioService.LoginStatus loginStatus = usuarioService.login("user@ua", "123");
+
+        // THEN
+        // su contraseña se sustituye por un hash que sigue siendo válido.
+
+        assertThat(loginStatus).isEqualTo(UsuarioService.LoginStatus.LOGIN_OK);
+        assertThat(usuarioService.findById(usuario.getId()).getPassword()).startsWith("pbkdf2-sha256$");
+        assertThat(usuarioService.login("user@ua", "123")).isEqualTo(UsuarioService.LoginStatus.LOGIN_OK);
+    }
 }
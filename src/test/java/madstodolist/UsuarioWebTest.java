@@ -1,16 +1,24 @@
 package madstodolist;
 
+import madstodolist.authentication.EjecutorPasswordsSaturadoException;
 import madstodolist.authentication.ManagerUserSession;
+import madstodolist.authentication.UsuarioSesion;
 import madstodolist.model.Usuario;
+import madstodolist.model.UsuarioResumen;
+import madstodolist.service.ResultadoLogin;
 import madstodolist.service.UsuarioService;
+import madstodolist.service.UsuarioServiceException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.web.servlet.MockMvc;
 
 import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -44,17 +52,11 @@ public class UsuarioWebTest {
         @Test
         public void servicioLoginUsuarioOK() throws Exception {
                 // GIVEN
-                // Moqueamos la llamada a usuarioService.login para que
-                // devuelva un LOGIN_OK y la llamada a usuarioServicie.findByEmail
-                // para que devuelva un usuario determinado.
+                // Moqueamos la llamada a usuarioService.autenticar para que
+                // devuelva un LOGIN_OK con los datos de un usuario determinado.
 
-                Usuario anaGarcia = new Usuario("ana.garcia@gmail.com");
-                anaGarcia.setId(1L);
-
-                when(usuarioService.login("ana.garcia@gmail.com", "12345678"))
-                                .thenReturn(UsuarioService.LoginStatus.LOGIN_OK);
-                when(usuarioService.findByEmail("ana.garcia@gmail.com"))
-                                .thenReturn(anaGarcia);
+                when(usuarioService.autenticar("ana.garcia@gmail.com", "12345678"))
+                                .thenReturn(ResultadoLogin.ok(1L, "Ana García", false));
 
                 // WHEN, THEN
                 // Realizamos una petición POST al login pasando los datos
@@ -71,10 +73,10 @@ public class UsuarioWebTest {
     @Test
     public void servicioLoginUsuarioNotFound() throws Exception {
         // GIVEN
-        // Moqueamos el método usuarioService.login para que devuelva
+        // Moqueamos el método usuarioService.autenticar para que devuelva
         // USER_NOT_FOUND
-        when(usuarioService.login("pepito.perez@gmail.com", "12345678"))
-                .thenReturn(UsuarioService.LoginStatus.USER_NOT_FOUND);
+        when(usuarioService.autenticar("pepito.perez@gmail.com", "12345678"))
+                .thenReturn(ResultadoLogin.error(UsuarioService.LoginStatus.USER_NOT_FOUND));
 
         // WHEN, THEN
         // Realizamos una petición POST con los datos del usuario mockeado y
@@ -88,10 +90,10 @@ public class UsuarioWebTest {
     @Test
     public void servicioLoginUsuarioErrorPassword() throws Exception {
         // GIVEN
-        // Moqueamos el método usuarioService.login para que devuelva
+        // Moqueamos el método usuarioService.autenticar para que devuelva
         // ERROR_PASSWORD
-        when(usuarioService.login("ana.garcia@gmail.com", "000"))
-                .thenReturn(UsuarioService.LoginStatus.ERROR_PASSWORD);
+        when(usuarioService.autenticar("ana.garcia@gmail.com", "000"))
+                .thenReturn(ResultadoLogin.error(UsuarioService.LoginStatus.ERROR_PASSWORD));
 
         // WHEN, THEN
         // Realizamos una petición POST con los datos del usuario mockeado y
@@ -106,15 +108,9 @@ public class UsuarioWebTest {
         public void servicioListarUsuarios() throws Exception {
                 // GIVEN
                 // Dos usuarios con correo, ID
-                Usuario usuario = new Usuario("user@ua");
-                usuario.setId(1L);
-
-                Usuario usuario_2 = new Usuario("user_2@ua");
-                usuario.setId(2L);
-
-                List<Usuario> listaUsuarios = new ArrayList<Usuario>();
-                listaUsuarios.add(usuario);
-                listaUsuarios.add(usuario_2);
+                List<UsuarioResumen> listaUsuarios = new ArrayList<UsuarioResumen>();
+                listaUsuarios.add(resumen(1L, "user@ua", null));
+                listaUsuarios.add(resumen(2L, "user_2@ua", null));
 
                 // Y un usuario administrador
                 Usuario admin = new Usuario("admin@ua");
@@ -123,16 +119,18 @@ public class UsuarioWebTest {
                 admin.setIsAdmin(true);
 
                 // WHEN
-                // Mockeamos el servicio de obtención de todos los usuarios para que nos devuelva
-                // la lista de usuarios
-                when(usuarioService.allUsuarios()).thenReturn(listaUsuarios);
+                // Mockeamos el servicio del listado de usuarios para que nos devuelva
+                // la primera página con la lista de usuarios
+                when(usuarioService.directorioUsuarios("", "email", false, 0, 25))
+                                .thenReturn(new PageImpl<>(listaUsuarios, PageRequest.of(0, 25), 2));
 
-                // Mockeamos el servicio de obtención del administrador para 
+                // Mockeamos el servicio de obtención del id del administrador para 
                 // que nos devuelva al adminitrador que acabamos de crea
-                when(usuarioService.findAdmin()).thenReturn(admin);
+                when(usuarioService.findAdminId()).thenReturn(admin.getId());
 
                 // Mockeamos el método usuarioLogeado para que nos devuelva al administrador
                 when(managerUserSession.usuarioLogeado()).thenReturn(admin.getId());
+                when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(admin));
 
                 // WHEN, THEN
                 // Realizamos una petición get con la lista de usuarios
@@ -149,6 +147,62 @@ public class UsuarioWebTest {
                                                 containsString("Total usuarios:")))));
         }
 
+        @Test
+        public void servicioListarUsuariosBusquedaYPaginacion() throws Exception {
+                // GIVEN
+                // Un usuario administrador logeado
+                Usuario admin = new Usuario("admin@ua");
+                admin.setNombre("Admin");
+                admin.setId(3L);
+                admin.setIsAdmin(true);
+
+                when(usuarioService.findAdminId()).thenReturn(admin.getId());
+                when(managerUserSession.usuarioLogeado()).thenReturn(admin.getId());
+                when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(admin));
+
+                // La segunda página de 25 usuarios cuyo email o nombre empieza
+                // por "us", ordenados por nombre descendente, de un total de 60
+                List<UsuarioResumen> listaUsuarios = new ArrayList<UsuarioResumen>();
+                listaUsuarios.add(resumen(30L, "user30@ua", "Usuario 30"));
+                when(usuarioService.directorioUsuarios("us", "nombre", true, 1, 25))
+                                .thenReturn(new PageImpl<>(listaUsuarios, PageRequest.of(1, 25), 60));
+
+                // WHEN, THEN
+                // La página muestra el usuario, el total, la posición y los enlaces
+                // a las páginas anterior y siguiente conservando búsqueda y orden
+                this.mockMvc.perform(get("/registrados?q=us&orden=nombre&dir=desc&pagina=1"))
+                                .andExpect(content().string(allOf(
+                                                containsString("user30@ua"),
+                                                containsString("Usuario 30"),
+                                                containsString("60"),
+                                                containsString("Página 2 de 3"),
+                                                containsString("/registrados?q=us&amp;orden=nombre&amp;dir=desc&amp;pagina=0"),
+                                                containsString("/registrados?q=us&amp;orden=nombre&amp;dir=desc&amp;pagina=2"))));
+        }
+
+        @Test
+        public void servicioEstadisticasCacheSoloAdministrador() throws Exception {
+                // GIVEN
+                // Un usuario administrador con id 3 y un usuario normal con id 1
+                when(usuarioService.findAdminId()).thenReturn(3L);
+
+                // WHEN, THEN
+                // El administrador obtiene en JSON las estadísticas de cada región
+                // de la caché de segundo nivel
+                when(managerUserSession.usuarioLogeado()).thenReturn(3L);
+                this.mockMvc.perform(get("/admin/cache"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().string(allOf(
+                                                containsString("\"region\":\"usuarios\""),
+                                                containsString("\"aciertos\""),
+                                                containsString("\"fallos\""))));
+
+                // y el usuario normal no tiene acceso
+                when(managerUserSession.usuarioLogeado()).thenReturn(1L);
+                this.mockMvc.perform(get("/admin/cache"))
+                                .andExpect(status().isUnauthorized());
+        }
+
         @Test
         public void servicioDescripciónUsuario() throws Exception {
 
@@ -169,12 +223,13 @@ public class UsuarioWebTest {
                 // usuario que acabamos de crear
                 when(usuarioService.findById(usuario.getId())).thenReturn(usuario);
 
-                // Mockeamos el servicio de obtención del administrador para 
+                // Mockeamos el servicio de obtención del id del administrador para 
                 // que nos devuelva al usuario que acabamos de crea
-                when(usuarioService.findAdmin()).thenReturn(admin);
+                when(usuarioService.findAdminId()).thenReturn(admin.getId());
 
                 // Mockeamos el método usuarioLogeado para que nos devuelva al administrador
                 when(managerUserSession.usuarioLogeado()).thenReturn(admin.getId());
+                when(managerUserSession.usuarioSesion()).thenReturn(UsuarioSesion.of(admin));
 
                 // THEN
                 // Se realiza la petición GET a la descipción del usuario,
@@ -194,6 +249,12 @@ public class UsuarioWebTest {
 
         @Test
         public void servicioRegistrarUsuarioAdminNoExiste() throws Exception {
+                // GIVEN
+                // No existe usuario administrador
+                when(usuarioService.findAdminId()).thenReturn(null);
+
+                // THEN
+                // La página de registro muestra el checkbox de administrador
                 this.mockMvc.perform(get("/registro"))
                 .andExpect((content().string(allOf(
                         containsString("Quiero ser"),
@@ -211,9 +272,9 @@ public class UsuarioWebTest {
                 usuario.setIsAdmin(true);
 
                 // WHEN
-                // Mockeamos el servicio de obtención del administrador para 
+                // Mockeamos el servicio de obtención del id del administrador para 
                 // que nos devuelva al usuario que acabamos de crea
-                when(usuarioService.findAdmin()).thenReturn(usuario);
+                when(usuarioService.findAdminId()).thenReturn(usuario.getId());
 
                 // THEN
                 // Se realiza la petición GET a la página de registro y comprobamos la ausencia
@@ -223,4 +284,54 @@ public class UsuarioWebTest {
                                 allOf(not(containsString("Quiero ser")),
                                      (not(containsString("Administrador"))))));
         }
+
+        @Test
+        public void servicioRegistrarUsuarioEmailRepetido() throws Exception {
+
+                // GIVEN
+                // El servicio detecta que el email ya está registrado
+                when(usuarioService.findAdminId()).thenReturn(null);
+                when(usuarioService.registrar(any(Usuario.class)))
+                                .thenThrow(new UsuarioServiceException("El usuario user@ua ya está registrado"));
+
+                // WHEN, THEN
+                // Se realiza la petición POST de registro y se vuelve a mostrar
+                // el formulario con el error
+                this.mockMvc.perform(post("/registro")
+                                .param("eMail", "user@ua")
+                                .param("password", "123")
+                                .param("isAdmin", "false"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().string(
+                                                containsString("El usuario user@ua ya está registrado")));
+        }
+
+        @Test
+        public void servicioRegistrarUsuarioServidorOcupado() throws Exception {
+
+                // GIVEN
+                // El pool de hash de contraseñas está lleno
+                when(usuarioService.findAdminId()).thenReturn(null);
+                when(usuarioService.registrar(any(Usuario.class)))
+                                .thenThrow(new EjecutorPasswordsSaturadoException());
+
+                // WHEN, THEN
+                // Se realiza la petición POST de registro y se vuelve a mostrar
+                // el formulario con el aviso
+                this.mockMvc.perform(post("/registro")
+                                .param("eMail", "user@ua")
+                                .param("password", "123")
+                                .param("isAdmin", "false"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().string(
+                                                containsString("Servidor ocupado")));
+        }
+
+        private static UsuarioResumen resumen(Long id, String email, String nombre) {
+                return new UsuarioResumen() {
+                        public Long getId() { return id; }
+                        public String getEmail() { return email; }
+                        public String getNombre() { return nombre; }
+                };
+        }
 }
@@ -0,0 +1,20 @@
+package madstodolist;
+
+import madstodolist.service.CacheService;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+// Los tests limpian la BD con clean-db.sql, que borra las filas sin pasar
+// por Hibernate. Vaciamos la caché de segundo nivel antes de cada test
+// para que no devuelva entidades ni consultas de tests anteriores.
+// Registrado en META-INF/spring.factories.
+public class VaciarCacheTestExecutionListener extends AbstractTestExecutionListener {
+
+    @Override
+    public void beforeTestMethod(TestContext testContext) {
+        ApplicationContext context = testContext.getApplicationContext();
+        if (context.getBeanNamesForType(CacheService.class).length > 0)
+            context.getBean(CacheService.class).vaciar();
+    }
+}